@@ -22,21 +22,42 @@
 package org.jboss.as.forge;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
 
 import org.jboss.as.forge.ResultMessage.Level;
+import org.jboss.as.forge.server.LatencyHistogram;
+import org.jboss.as.forge.server.LaunchProfile;
+import org.jboss.as.forge.server.Metrics;
 import org.jboss.as.forge.server.Server.State;
+import org.jboss.as.forge.server.deployment.Deployment.Type;
+import org.jboss.as.forge.server.deployment.DeploymentFailedException;
+import org.jboss.as.forge.server.deployment.standalone.DeploymentHandle;
 import org.jboss.as.forge.util.Files;
 import org.jboss.as.forge.util.Messages;
 import org.jboss.as.forge.util.Streams;
 import org.jboss.forge.project.Project;
 import org.jboss.forge.project.dependencies.DependencyResolver;
 import org.jboss.forge.project.facets.DependencyFacet;
+import org.jboss.forge.project.facets.PackagingFacet;
 import org.jboss.forge.project.facets.events.InstallFacets;
 import org.jboss.forge.resources.DependencyResource;
 import org.jboss.forge.resources.Resource;
@@ -81,6 +102,12 @@ public class AS7Plugin implements Plugin {
     @Inject
     private DependencyResolver dependencyResolver;
 
+    @Inject
+    private DistributionCache distributionCache;
+
+    @Inject
+    private DeploymentWatcher deploymentWatcher;
+
     private final Messages messages = Messages.INSTANCE;
 
     @SetupCommand
@@ -177,18 +204,45 @@ public class AS7Plugin implements Plugin {
 
     @Command(help = "Prints the console output, if any, from the server started via the plugin.",
             value = "print-console")
-    public void printConsole(@SuppressWarnings("unused") final PipeOut out,
-                             @Option(name = "lines", help = "The number of lines to print", defaultValue = "0") final int lines) throws Exception {
+    public void printConsole(final PipeOut out,
+                             @Option(name = "lines", help = "The number of lines to print", defaultValue = "0") final int lines,
+                             @Option(name = "follow", shortName = "f", flagOnly = true, help = "Prints new lines as they are written to the console") final boolean follow,
+                             @Option(name = "filter", help = "A regular expression a line must contain to be printed") final String filter,
+                             @Option(name = "level", help = "The minimum log level of the lines to print") final String level,
+                             @Option(name = "until", help = "A regular expression that stops following the console once a line contains it") final String until,
+                             @Option(name = "timeout", help = "The maximum number of seconds to follow the console", defaultValue = "0") final int timeout) throws Exception {
         // Get the facet
         final AS7ServerFacet serverFacet = project.getFacet(AS7ServerFacet.class);
+        final Pattern filterPattern;
+        final Pattern untilPattern;
+        final ConsoleFilter.Level minLevel;
+        try {
+            filterPattern = (filter == null ? null : Pattern.compile(filter));
+            untilPattern = (until == null ? null : Pattern.compile(until));
+        } catch (PatternSyntaxException e) {
+            ShellMessages.error(out, messages.getMessage("print.console.invalid.pattern", e.getPattern(), e.getDescription()));
+            return;
+        }
+        try {
+            minLevel = (level == null ? null : ConsoleFilter.Level.valueOf(level.toUpperCase(Locale.ENGLISH)));
+        } catch (IllegalArgumentException e) {
+            ShellMessages.error(out, messages.getMessage("print.console.invalid.level", level, Arrays.asList(ConsoleFilter.Level.values())));
+            return;
+        }
+        final ConsoleFilter consoleFilter = new ConsoleFilter(new ServerConsoleWrapper.LineHandler() {
+            @Override
+            public void handle(final String line) {
+                out.println(line);
+            }
+        }, filterPattern, minLevel);
+        if (follow) {
+            followConsole(out, serverFacet.getConsoleBuffer(), consoleFilter, untilPattern, (lines > 0 ? lines : 10), timeout);
+            return;
+        }
         try {
-            final List<String> consoleLines = serverFacet.readConsoleOutput(lines);
-            if (consoleLines.isEmpty()) {
+            serverFacet.readConsoleOutput(lines, consoleFilter);
+            if (consoleFilter.getCount() == 0) {
                 ShellMessages.info(out, messages.getMessage("print.console.no-lines"));
-            } else {
-                for (String line : consoleLines) {
-                    out.println(line);
-                }
             }
         } catch (IOException e) {
             ShellMessages.error(out, messages.getMessage("print.console.error", e.getLocalizedMessage()));
@@ -207,10 +261,30 @@ public class AS7Plugin implements Plugin {
     @Command
     public void deploy(final PipeOut out,
                        @Option(name = "force", shortName = "f", defaultValue = "true") final boolean force,
+                       @Option(name = "all", shortName = "a", flagOnly = true, help = "Deploys the deployable artifacts of all modules, other than modules packaged into an EAR, in a single deployment plan") final boolean all,
+                       @Option(name = "rollback", flagOnly = true, help = "Rolls back all deployments if any deployment fails, only used with --all") final boolean rollback,
+                       @Option(name = "delta", flagOnly = true, help = "Only writes the entries of the archive that changed since the last delta deployment, requires a local server") final boolean delta,
+                       @Option(name = "exploded", flagOnly = true, help = "Deploys the project as an exploded directory and updates static resources in place, requires a local server") final boolean exploded,
+                       @Option(name = "background", shortName = "b", flagOnly = true, help = "Deploys in the background, use deployment-status to check the progress") final boolean background,
+                       @Option(name = "targets", help = "A comma separated list of the named server targets to deploy to concurrently, or all for every target") final String targets,
+                       @Option(name = "server-groups", help = "A comma separated list of the server groups of a managed domain to deploy to in parallel, defaults to the configured server groups in domain mode") final String serverGroups,
+                       @Option(name = "timeout", help = "The maximum number of seconds to wait for the deployment before it is cancelled, only used when deploying the final artifact to a standalone server without any other deployment mode", defaultValue = "0") final int timeout,
                        @Option(name = "hostname", shortName = "h") final String hostname,
                        @Option(name = "port", shortName = "p", defaultValue = "0") final int port) throws Exception {
+        if (!validateModes(out, timeout, (all ? "all" : null), (delta ? "delta" : null), (exploded ? "exploded" : null),
+                (background ? "background" : null), (targets == null ? null : "targets"), (serverGroups == null ? null : "server-groups"))) {
+            return;
+        }
+        if (rollback && !all) {
+            ShellMessages.error(out, messages.getMessage("deployment.options.requires", "--rollback", "--all"));
+            return;
+        }
         // Get the facet
         final AS7ServerFacet serverFacet = project.getFacet(AS7ServerFacet.class);
+        if (targets != null) {
+            deployToTargets(out, serverFacet, (force ? Type.FORCE_DEPLOY : Type.DEPLOY), targets);
+            return;
+        }
         // Get the server status
         final State state = serverFacet.getState();
         // The server must be running
@@ -222,7 +296,27 @@ public class AS7Plugin implements Plugin {
             if (validatePort(port)) {
                 configuration.setPort(port);
             }
-            checkResult(out, serverFacet.deploy(null, force));
+            if (serverGroups != null || configuration.isDomain()) {
+                if (timeout > 0) {
+                    ShellMessages.error(out, messages.getMessage("deployment.timeout.unsupported", messages.getMessage("deployment.mode.domain")));
+                    return;
+                }
+                if (all || delta || exploded || background) {
+                    ShellMessages.error(out, messages.getMessage("deployment.options.domain"));
+                    return;
+                }
+                deployToServerGroups(out, serverFacet, (force ? Type.FORCE_DEPLOY : Type.DEPLOY), serverGroups);
+            } else if (all) {
+                checkResult(out, serverFacet.deployAll(force, rollback));
+            } else if (delta) {
+                checkResult(out, serverFacet.deployDelta(null));
+            } else if (exploded) {
+                checkResult(out, serverFacet.deployExploded());
+            } else if (background) {
+                deployInBackground(out, serverFacet, (force ? Type.FORCE_DEPLOY : Type.DEPLOY));
+            } else {
+                checkResult(out, serverFacet.deploy(null, force, timeout));
+            }
         } else {
             ShellMessages.error(out, messages.getMessage("server.not.running", hostname, port));
         }
@@ -230,10 +324,24 @@ public class AS7Plugin implements Plugin {
 
     @Command
     public void redeploy(final PipeOut out,
+                         @Option(name = "delta", flagOnly = true, help = "Only writes the entries of the archive that changed since the last delta deployment, requires a local server") final boolean delta,
+                         @Option(name = "exploded", flagOnly = true, help = "Redeploys the project as an exploded directory and updates static resources in place, requires a local server") final boolean exploded,
+                         @Option(name = "background", shortName = "b", flagOnly = true, help = "Redeploys in the background, use deployment-status to check the progress") final boolean background,
+                         @Option(name = "targets", help = "A comma separated list of the named server targets to redeploy to concurrently, or all for every target") final String targets,
+                         @Option(name = "server-groups", help = "A comma separated list of the server groups of a managed domain to redeploy to in parallel, defaults to the configured server groups in domain mode") final String serverGroups,
+                         @Option(name = "timeout", help = "The maximum number of seconds to wait for the deployment before it is cancelled, only used when deploying the final artifact to a standalone server without any other deployment mode", defaultValue = "0") final int timeout,
                          @Option(name = "hostname", shortName = "h") final String hostname,
                          @Option(name = "port", shortName = "p", defaultValue = "0") final int port) throws Exception {
+        if (!validateModes(out, timeout, (delta ? "delta" : null), (exploded ? "exploded" : null), (background ? "background" : null),
+                (targets == null ? null : "targets"), (serverGroups == null ? null : "server-groups"))) {
+            return;
+        }
         // Get the facet
         final AS7ServerFacet serverFacet = project.getFacet(AS7ServerFacet.class);
+        if (targets != null) {
+            deployToTargets(out, serverFacet, Type.REDEPLOY, targets);
+            return;
+        }
         // Get the server status
         final State state = serverFacet.getState();
         // The server must be running
@@ -245,7 +353,25 @@ public class AS7Plugin implements Plugin {
             if (validatePort(port)) {
                 configuration.setPort(port);
             }
-            checkResult(out, serverFacet.redeploy(null));
+            if (serverGroups != null || configuration.isDomain()) {
+                if (timeout > 0) {
+                    ShellMessages.error(out, messages.getMessage("deployment.timeout.unsupported", messages.getMessage("deployment.mode.domain")));
+                    return;
+                }
+                if (delta || exploded || background) {
+                    ShellMessages.error(out, messages.getMessage("deployment.options.domain"));
+                    return;
+                }
+                deployToServerGroups(out, serverFacet, Type.REDEPLOY, serverGroups);
+            } else if (delta) {
+                checkResult(out, serverFacet.deployDelta(null));
+            } else if (exploded) {
+                checkResult(out, serverFacet.deployExploded());
+            } else if (background) {
+                deployInBackground(out, serverFacet, Type.REDEPLOY);
+            } else {
+                checkResult(out, serverFacet.redeploy(null, timeout));
+            }
         } else {
             ShellMessages.error(out, messages.getMessage("server.not.running", hostname, port));
         }
@@ -254,10 +380,16 @@ public class AS7Plugin implements Plugin {
     @Command
     public void undeploy(final PipeOut out,
                          @Option(name = "ignore-missing", shortName = "i", defaultValue = "true") final boolean ignoreMissing,
+                         @Option(name = "targets", help = "A comma separated list of the named server targets to undeploy from concurrently, or all for every target") final String targets,
+                         @Option(name = "server-groups", help = "A comma separated list of the server groups of a managed domain to undeploy from, defaults to the configured server groups in domain mode") final String serverGroups,
                          @Option(name = "hostname", shortName = "h") final String hostname,
                          @Option(name = "port", shortName = "p", defaultValue = "0") final int port) throws Exception {
         // Get the facet
         final AS7ServerFacet serverFacet = project.getFacet(AS7ServerFacet.class);
+        if (targets != null) {
+            deployToTargets(out, serverFacet, (ignoreMissing ? Type.UNDEPLOY_IGNORE_MISSING : Type.UNDEPLOY), targets);
+            return;
+        }
         // Get the server status
         final State state = serverFacet.getState();
         // The server must be running
@@ -269,19 +401,123 @@ public class AS7Plugin implements Plugin {
             if (validatePort(port)) {
                 configuration.setPort(port);
             }
-            checkResult(out, serverFacet.undeploy(null, ignoreMissing));
+            if (serverGroups != null || configuration.isDomain()) {
+                deployToServerGroups(out, serverFacet, (ignoreMissing ? Type.UNDEPLOY_IGNORE_MISSING : Type.UNDEPLOY), serverGroups);
+            } else {
+                checkResult(out, serverFacet.undeploy(null, ignoreMissing));
+            }
         } else {
             ShellMessages.error(out, messages.getMessage("server.not.running", hostname, port));
         }
     }
 
+    @Command(help = "Lists, adds or removes the named server targets the project can be deployed to with the --targets option.", value = "target")
+    public void target(final PipeOut out,
+                       @Option(name = "add", help = "The name of the target to add or replace") final String add,
+                       @Option(name = "remove", help = "The name of the target to remove") final String remove,
+                       @Option(name = "hostname", shortName = "h", help = "The host name for the management interface of the target", defaultValue = ProjectConfiguration.DEFAULT_HOSTNAME) final String hostname,
+                       @Option(name = "port", shortName = "p", help = "The port for the management interface of the target", defaultValue = "9999") final int port) {
+        final ProjectConfiguration configuration = project.getFacet(AS7ServerFacet.class).getConfiguration();
+        if (remove != null) {
+            if (configuration.removeTarget(remove)) {
+                ShellMessages.success(out, messages.getMessage("target.removed", remove));
+            } else {
+                ShellMessages.error(out, messages.getMessage("deployment.targets.unknown", remove, configuration.getTargets().keySet()));
+            }
+        }
+        if (add != null) {
+            if (!validatePort(port)) {
+                ShellMessages.error(out, messages.getMessage("port.invalid", port));
+                return;
+            }
+            final ServerTarget target;
+            try {
+                target = ServerTarget.of(add, hostname, port);
+            } catch (IllegalArgumentException e) {
+                ShellMessages.error(out, e.getLocalizedMessage());
+                return;
+            }
+            configuration.addTarget(target);
+            ShellMessages.success(out, messages.getMessage("target.added", target));
+        }
+        if (add == null && remove == null) {
+            final Map<String, ServerTarget> targets = configuration.getTargets();
+            if (targets.isEmpty()) {
+                ShellMessages.info(out, messages.getMessage("deployment.targets.none"));
+            }
+            for (ServerTarget target : targets.values()) {
+                out.println(target.toString());
+            }
+        }
+    }
+
+    @Command(help = "Prints the progress of the deployment running in the background.", value = "deployment-status")
+    public void deploymentStatus(final PipeOut out,
+                                 @Option(name = "cancel", flagOnly = true, help = "Cancels the deployment running in the background") final boolean cancel) {
+        final AS7ServerFacet serverFacet = project.getFacet(AS7ServerFacet.class);
+        final DeploymentHandle handle = serverFacet.getBackgroundDeployment();
+        if (handle == null) {
+            ShellMessages.info(out, messages.getMessage("deployment.background.none"));
+        } else if (cancel && handle.cancel()) {
+            ShellMessages.info(out, messages.getMessage("deployment.background.cancelled", handle.getName()));
+        } else {
+            ShellMessages.info(out, handle.toString());
+        }
+    }
+
+    @Command(help = "Watches the final artifact of the project and redeploys it each time it is rebuilt.")
+    public void watch(final PipeOut out,
+                      @Option(name = "stop", flagOnly = true, help = "Stops watching the final artifact") final boolean stop,
+                      @Option(name = "quiet-period", help = "The number of milliseconds the artifact must not change before it is redeployed",
+                              defaultValue = "1000") final long quietPeriod,
+                      @Option(name = "delta", flagOnly = true, help = "Only writes the entries of the archive that changed, requires a local server") final boolean delta) throws Exception {
+        if (stop) {
+            if (deploymentWatcher.stop()) {
+                ShellMessages.info(out, messages.getMessage("watch.stopped"));
+            } else {
+                ShellMessages.info(out, messages.getMessage("watch.not.watching"));
+            }
+            return;
+        }
+        final AS7ServerFacet serverFacet = project.getFacet(AS7ServerFacet.class);
+        if (!serverFacet.getState().isRunningState()) {
+            final ProjectConfiguration configuration = serverFacet.getConfiguration();
+            ShellMessages.error(out, messages.getMessage("server.not.running", configuration.getHostname(), configuration.getPort()));
+            return;
+        }
+        final File artifact = new File(project.getFacet(PackagingFacet.class).getFinalArtifact().getFullyQualifiedName());
+        final DeploymentWatcher.Deployer deployer = new DeploymentWatcher.Deployer() {
+            @Override
+            public ResultMessage deploy() throws Exception {
+                return (delta ? serverFacet.deployDelta(null) : serverFacet.deploy(null, true));
+            }
+        };
+        if (deploymentWatcher.start(artifact, (quietPeriod > 0 ? quietPeriod : DeploymentWatcher.DEFAULT_QUIET_PERIOD), deployer, shell)) {
+            ShellMessages.info(out, messages.getMessage("watch.started", artifact));
+        } else {
+            ShellMessages.error(out, messages.getMessage("watch.already.watching"));
+        }
+    }
+
     @Command
     public void start(final PipeOut out,
                       @Option(name = "jboss-home") final Resource<?> jbossHome,
                       @Option(name = "java-home") final String javaHome,
-                      @Option(name = "version", completer = VersionCompleter.class) final String version) throws Exception {
+                      @Option(name = "version", completer = VersionCompleter.class) final String version,
+                      @Option(name = "domain", flagOnly = true, help = "Starts a managed domain rather than a standalone server") final boolean domain,
+                      @Option(name = "profile", help = "The launch profile with the heap, GC and JIT options to start the server with") final String profile) throws Exception {
 
         final AS7ServerFacet serverFacet = project.getFacet(AS7ServerFacet.class);
+        final LaunchProfile launchProfile;
+        if (profile == null) {
+            launchProfile = null;
+        } else {
+            launchProfile = serverFacet.getConfiguration().getLaunchProfile(profile);
+            if (launchProfile == null) {
+                ShellMessages.error(out, messages.getMessage("profile.unknown", profile, serverFacet.getConfiguration().getLaunchProfiles().keySet()));
+                return;
+            }
+        }
         final File target;
         if (jbossHome != null) {
             // Create the file
@@ -331,19 +567,120 @@ public class AS7Plugin implements Plugin {
         }
 
         wait.start(messages.getMessage("server.starting"));
-        final ResultMessage result = serverFacet.start(target, v, javaHome);
+        final ResultMessage result = serverFacet.start(target, v, javaHome, domain || serverFacet.getConfiguration().isDomain(), launchProfile);
         wait.stop();
         if (result.getLevel() == Level.SUCCESS) {
-            ShellMessages.success(out, messages.getMessage("server.start.success", v));
+            ShellMessages.success(out, result.getMessage());
         } else {
             checkResult(out, result);
         }
     }
 
+    @Command(help = "Enables or disables the pool of booted standby servers the start command adopts rather than booting a new server.")
+    public void standby(final PipeOut out,
+                        @Option(name = "enable", flagOnly = true, help = "Enables the pool and boots a standby server in the background") final boolean enable,
+                        @Option(name = "disable", flagOnly = true, help = "Disables the pool and stops the standby servers") final boolean disable) {
+        final AS7ServerFacet serverFacet = project.getFacet(AS7ServerFacet.class);
+        if (enable) {
+            serverFacet.setStandby(true);
+            ShellMessages.success(out, messages.getMessage("standby.enabled"));
+        } else if (disable) {
+            serverFacet.setStandby(false);
+            ShellMessages.success(out, messages.getMessage("standby.disabled"));
+        } else {
+            ShellMessages.info(out, messages.getMessage("standby.status", serverFacet.getConfiguration().isStandby(), serverFacet.getStandbyCount()));
+        }
+    }
+
+    @Command(help = "Lists, adds or removes the launch profiles the start command can use with the --profile option.", value = "profile")
+    public void profile(final PipeOut out,
+                        @Option(name = "add", help = "The name of the profile to add or replace") final String add,
+                        @Option(name = "jvm-args", help = "The space separated JVM options of the profile to add") final String jvmArgs,
+                        @Option(name = "remove", help = "The name of the profile to remove, a replaced built-in profile is restored") final String remove) {
+        final ProjectConfiguration configuration = project.getFacet(AS7ServerFacet.class).getConfiguration();
+        if (remove != null) {
+            if (configuration.removeLaunchProfile(remove)) {
+                ShellMessages.success(out, messages.getMessage("profile.removed", remove));
+            } else {
+                ShellMessages.error(out, messages.getMessage("profile.unknown", remove, configuration.getLaunchProfiles().keySet()));
+            }
+        }
+        if (add != null) {
+            final LaunchProfile launchProfile;
+            try {
+                launchProfile = LaunchProfile.of(add, (jvmArgs == null ? Collections.<String>emptyList() : Arrays.asList(jvmArgs.trim().split("\\s+"))));
+            } catch (IllegalArgumentException e) {
+                ShellMessages.error(out, e.getLocalizedMessage());
+                return;
+            }
+            configuration.addLaunchProfile(launchProfile);
+            ShellMessages.success(out, messages.getMessage("profile.added", launchProfile));
+        }
+        if (add == null && remove == null) {
+            for (LaunchProfile launchProfile : configuration.getLaunchProfiles().values()) {
+                final String name = launchProfile.getName();
+                final long bootTime = configuration.getLaunchProfileBootTime(name);
+                if (bootTime < 0L) {
+                    out.println(launchProfile.toString());
+                } else {
+                    out.println(messages.getMessage("profile.recorded", launchProfile, bootTime,
+                            AS7ServerFacet.formatSize(configuration.getLaunchProfileRss(name))));
+                }
+            }
+        }
+    }
+
+    @Command(help = "Prints the latency percentiles of server boots, deployments, CLI commands and management operations, and the failure and reconnect counters.", value = "metrics")
+    public void metrics(final PipeOut out,
+                        @Option(name = "json", flagOnly = true, help = "Prints the metrics as JSON, latencies are in microseconds") final boolean json,
+                        @Option(name = "export", help = "The file to export the metrics to as JSON") final Resource<?> export,
+                        @Option(name = "reset", flagOnly = true, help = "Clears the metrics, runs after any other options") final boolean reset) {
+        final Metrics metrics = Metrics.INSTANCE;
+        if (export != null) {
+            final File file = new File(export.getFullyQualifiedName());
+            Writer writer = null;
+            try {
+                writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                writer.write(metrics.toModelNode().toJSONString(false));
+                writer.close();
+                ShellMessages.success(out, messages.getMessage("metrics.exported", file.getAbsolutePath()));
+            } catch (IOException e) {
+                ShellMessages.error(out, messages.getMessage("metrics.export.failed", file.getAbsolutePath(), e.getLocalizedMessage()));
+            } finally {
+                Streams.safeClose(writer);
+            }
+        }
+        if (json) {
+            out.println(metrics.toModelNode().toJSONString(false));
+        } else if (export == null && !reset) {
+            final Map<String, LatencyHistogram> histograms = metrics.getHistograms();
+            final Map<String, Long> counters = metrics.getCounters();
+            if (histograms.isEmpty() && counters.isEmpty()) {
+                ShellMessages.info(out, messages.getMessage("metrics.none"));
+            }
+            for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+                final LatencyHistogram histogram = entry.getValue();
+                out.println(messages.getMessage("metrics.histogram", entry.getKey(), histogram.getCount(),
+                        formatLatency(histogram.getValueAtPercentile(50d)), formatLatency(histogram.getValueAtPercentile(90d)),
+                        formatLatency(histogram.getValueAtPercentile(99d)), formatLatency(histogram.getValueAtPercentile(99.9d)),
+                        formatLatency(histogram.getMax()), formatLatency(Math.round(histogram.getMean()))));
+            }
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                out.println(messages.getMessage("metrics.counter", entry.getKey(), entry.getValue()));
+            }
+        }
+        if (reset) {
+            metrics.reset();
+            ShellMessages.success(out, messages.getMessage("metrics.reset"));
+        }
+    }
+
     @Command(help = "Checks the status of the server.")
     public void status(final PipeOut out) throws Exception {
-        ShellMessages.info(out, messages.getMessage("server.status", project.getFacet(AS7ServerFacet.class)
-                .getState()));
+        final AS7ServerFacet serverFacet = project.getFacet(AS7ServerFacet.class);
+        ShellMessages.info(out, messages.getMessage("server.status", serverFacet.getState(true)));
+        final ServerStateTracker stateTracker = serverFacet.getStateTracker();
+        shell.printlnVerbose(messages.getMessage("server.status.cache", stateTracker.getHits(), stateTracker.getMisses()));
     }
 
     @Command
@@ -421,6 +758,16 @@ public class AS7Plugin implements Plugin {
         return true;
     }
 
+    private static String formatLatency(final long micros) {
+        if (micros < 1000L) {
+            return micros + " us";
+        }
+        if (micros < 1000000L) {
+            return String.format("%.1f ms", micros / 1000.0);
+        }
+        return String.format("%.2f s", micros / 1000000.0);
+    }
+
     private void checkResult(final ShellPrintWriter out, final ResultMessage message) {
         checkResult(out, message, true);
     }
@@ -466,8 +813,67 @@ public class AS7Plugin implements Plugin {
     }
 
 
+    private void deployToTargets(final ShellPrintWriter out, final AS7ServerFacet serverFacet, final Type type, final String names) throws DeploymentFailedException {
+        final Map<String, ServerTarget> configured = serverFacet.getConfiguration().getTargets();
+        if (configured.isEmpty()) {
+            ShellMessages.error(out, messages.getMessage("deployment.targets.none"));
+            return;
+        }
+        final Collection<ServerTarget> targets;
+        if ("all".equals(names)) {
+            targets = configured.values();
+        } else {
+            targets = new ArrayList<ServerTarget>();
+            for (String name : names.split(",")) {
+                final ServerTarget target = configured.get(name.trim());
+                if (target == null) {
+                    ShellMessages.error(out, messages.getMessage("deployment.targets.unknown", name.trim(), configured.keySet()));
+                    return;
+                }
+                targets.add(target);
+            }
+        }
+        checkResult(out, serverFacet.deployToTargets(null, type, targets), false);
+    }
+
+    private void deployToServerGroups(final ShellPrintWriter out, final AS7ServerFacet serverFacet, final Type type, final String names) throws IOException, DeploymentFailedException {
+        final String[] configured = (names == null ? serverFacet.getConfiguration().getServerGroups() : names.split(","));
+        final Set<String> serverGroups = new LinkedHashSet<String>();
+        for (String name : configured) {
+            if (!name.trim().isEmpty()) {
+                serverGroups.add(name.trim());
+            }
+        }
+        if (serverGroups.isEmpty()) {
+            ShellMessages.error(out, messages.getMessage("deployment.server.groups.none"));
+            return;
+        }
+        checkResult(out, serverFacet.deployToServerGroups(null, type, serverGroups));
+    }
+
+    private void deployInBackground(final ShellPrintWriter out, final AS7ServerFacet serverFacet, final Type type) throws IOException {
+        final DeploymentHandle handle;
+        try {
+            handle = serverFacet.deployInBackground(null, type);
+        } catch (DeploymentFailedException e) {
+            ShellMessages.error(out, e.getLocalizedMessage());
+            return;
+        }
+        ShellMessages.info(out, messages.getMessage("deployment.background.started", handle.getName(), type));
+        // The command has returned by the time the deployment is done, write the result to the shell
+        handle.addListener(new DeploymentHandle.Listener() {
+            @Override
+            public void done(final DeploymentHandle handle) {
+                // Don't prompt from the background thread
+                checkResult(shell, serverFacet.getResult(handle, 0L), false);
+            }
+        });
+    }
+
     private boolean downloadAndInstall(final ShellPrintWriter out, final File target, final Version version) {
-        if (shell.promptBoolean(messages.getMessage("download.prompt.continue", version, target))) {
+        // Installing from the cache is quick enough to not require confirmation
+        final boolean cached = distributionCache.contains(version);
+        if (cached || shell.promptBoolean(messages.getMessage("download.prompt.continue", version, target))) {
             try {
                 final List<DependencyResource> asArchive = dependencyResolver.resolveArtifacts(version.getDependency());
                 if (asArchive.isEmpty()) {
@@ -487,8 +893,8 @@ public class AS7Plugin implements Plugin {
                         return false;
                     }
                 }
-                wait.start(messages.getMessage("download.downloading", version));
-                return Files.extractAppServer(zipFile.getFullyQualifiedName(), target);
+                wait.start(messages.getMessage(cached ? "download.installing.cached" : "download.downloading", version));
+                return distributionCache.createHome(version, new File(zipFile.getFullyQualifiedName()), target);
             } catch (IOException e) {
                 // Delete the directory
                 Files.deleteRecursively(target);
@@ -501,6 +907,71 @@ public class AS7Plugin implements Plugin {
         return false;
     }
 
+    private void followConsole(final PipeOut out, final ConsoleBuffer buffer, final ServerConsoleWrapper.LineHandler handler,
+                               final Pattern until, final int lines, final int timeout) {
+        if (buffer == null) {
+            ShellMessages.info(out, messages.getMessage("print.console.no-lines"));
+            return;
+        }
+        final long deadline = (timeout > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout) : Long.MAX_VALUE);
+        final List<String> newLines = new ArrayList<String>();
+        long seq = Math.max(buffer.getOldest(), buffer.getNext() - lines);
+        try {
+            while (true) {
+                final long oldest = buffer.getOldest();
+                if (seq < oldest) {
+                    ShellMessages.warn(out, messages.getMessage("print.console.skipped", oldest - seq));
+                }
+                newLines.clear();
+                seq = buffer.read(seq, newLines);
+                for (String line : newLines) {
+                    handler.handle(line);
+                    if (until != null && until.matcher(line).find()) {
+                        return;
+                    }
+                }
+                out.flush();
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L || (buffer.isClosed() && seq >= buffer.getNext())) {
+                    return;
+                }
+                buffer.await(seq, Math.min(remaining, 1000L));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Checks that at most one deployment mode was selected as the modes can't be combined. The timeout is only used
+     * for a single deployment of the final artifact, it can't be combined with any mode.
+     *
+     * @param out     the output to print the error to
+     * @param timeout the timeout in seconds or 0 if no timeout was set
+     * @param modes   the names of the selected mode options, {@code null} for each mode that was not selected
+     *
+     * @return {@code true} if the options are valid, otherwise {@code false}
+     */
+    private boolean validateModes(final PipeOut out, final int timeout, final String... modes) {
+        final List<String> selected = new ArrayList<String>();
+        for (String mode : modes) {
+            if (mode != null) {
+                selected.add("--" + mode);
+            }
+        }
+        if (selected.size() > 1) {
+            ShellMessages.error(out, messages.getMessage("deployment.options.conflict", selected));
+            return false;
+        }
+        if (timeout > 0 && !selected.isEmpty()) {
+            ShellMessages.error(out, messages.getMessage("deployment.timeout.unsupported", selected.get(0)));
+            return false;
+        }
+        return true;
+    }
+
     private boolean validatePort(final int port) {
         return port > 0 && port <= 65535;
     }
@@ -26,34 +26,71 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.NetworkInterface;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.security.auth.callback.CallbackHandler;
 
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
 import org.jboss.as.cli.CliInitializationException;
 import org.jboss.as.cli.CommandContext;
 import org.jboss.as.cli.CommandContextFactory;
 import org.jboss.as.cli.CommandFormatException;
 import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.helpers.ClientConstants;
 import org.jboss.as.forge.ResultMessage.Level;
+import org.jboss.as.forge.server.ClassDataSharing;
+import org.jboss.as.forge.server.LaunchProfile;
+import org.jboss.as.forge.server.Metrics;
 import org.jboss.as.forge.server.Server;
 import org.jboss.as.forge.server.Server.State;
 import org.jboss.as.forge.server.ServerBuilder;
 import org.jboss.as.forge.server.ServerOperations;
-import org.jboss.as.forge.server.deployment.Deployment;
+import org.jboss.as.forge.server.ShutdownReport;
+import org.jboss.as.forge.server.deployment.Deployment.Status;
 import org.jboss.as.forge.server.deployment.Deployment.Type;
 import org.jboss.as.forge.server.deployment.DeploymentFailedException;
+import org.jboss.as.forge.server.deployment.DeploymentResult;
+import org.jboss.as.forge.server.deployment.domain.DomainDeployment;
+import org.jboss.as.forge.server.deployment.standalone.DeltaDeployment;
+import org.jboss.as.forge.server.deployment.standalone.DeploymentHandle;
+import org.jboss.as.forge.server.deployment.standalone.ExplodedDeployment;
 import org.jboss.as.forge.server.deployment.standalone.StandaloneDeployment;
+import org.jboss.as.forge.server.deployment.standalone.StandaloneDeploymentBatch;
+import org.jboss.as.forge.util.Files;
 import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Processes;
 import org.jboss.as.forge.util.Streams;
 import org.jboss.dmr.ModelNode;
+import org.jboss.forge.maven.MavenCoreFacet;
+import org.jboss.forge.project.Project;
 import org.jboss.forge.project.facets.BaseFacet;
 import org.jboss.forge.project.facets.PackagingFacet;
+import org.jboss.forge.project.services.ProjectFactory;
+import org.jboss.forge.resources.DirectoryResource;
+import org.jboss.forge.resources.Resource;
+import org.jboss.forge.resources.ResourceFactory;
 import org.jboss.forge.shell.events.PreShutdown;
-import org.jboss.forge.shell.events.ProjectChanged;
 import org.jboss.forge.shell.plugins.RequiresFacet;
 
 /**
@@ -69,13 +106,47 @@ class AS7ServerFacet extends BaseFacet {
     @Inject
     private CallbackHandler callbackHandler;
 
+    private static final Set<String> DEPLOYABLE_PACKAGINGS = new HashSet<String>(Arrays.asList("war", "ear", "rar", "ejb", "jboss-sar"));
+    private static final int MAX_PARALLEL_DEPLOYMENTS = 8;
+    private static final ThreadPoolExecutor DEPLOYMENT_EXECUTOR;
+
+    static {
+        DEPLOYMENT_EXECUTOR = new ThreadPoolExecutor(MAX_PARALLEL_DEPLOYMENTS, MAX_PARALLEL_DEPLOYMENTS, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "AS7-Deployment-Fan-Out-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        DEPLOYMENT_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     private final Messages messages = Messages.INSTANCE;
 
     @Inject
     private ServerController serverController;
 
+    @Inject
+    private ServerStateTracker stateTracker;
+
+    @Inject
+    private StandbyPool standbyPool;
+
+    @Inject
+    private ProjectFactory projectFactory;
+
+    @Inject
+    private ResourceFactory resourceFactory;
+
+    private StandbyPool.Standby standby;
+
     private ServerConsoleWrapper consoleOut;
 
+    private volatile DeploymentHandle backgroundDeployment;
+
     @Override
     public boolean install() {
         configuration.setProperty(PROJECT_KEY, "true");
@@ -106,45 +177,457 @@ class AS7ServerFacet extends BaseFacet {
         }
         ResultMessage result = ResultMessage.of(Level.SUCCESS, messages.getMessage("override.success", configuration.getHostname(), configuration
                 .getPort()));
-        // Check for a running server
+        // Check for a running server, clients for other hosts are kept open in case they are switched back to
         if (serverController.hasServer()) {
             result = ResultMessage.of(Level.SUCCESS, messages.getMessage("override.success.running.server", configuration
                     .getHostname(), configuration.getPort()));
-        } else if (serverController.hasClient()) {
-            // Close the connection if there is one
-            serverController.closeClient();
         }
         return result;
     }
 
-    public List<String> readConsoleOutput(final int lines) throws IOException {
-        return consoleOut == null ? Collections.<String>emptyList() :
-                (lines > 0 ? consoleOut.readLines(lines) : consoleOut.readAllLines());
+    /**
+     * Reads the console output of a server started by the plugin passing each line to the handler.
+     *
+     * @param lines   the number of lines to read from the end of the console, 0 or less for all lines
+     * @param handler the handler for the lines
+     *
+     * @return the number of lines read
+     *
+     * @throws IOException if an error occurs reading the console output
+     */
+    public int readConsoleOutput(final int lines, final ServerConsoleWrapper.LineHandler handler) throws IOException {
+        final ServerConsoleWrapper consoleOut = this.consoleOut;
+        if (consoleOut == null) {
+            return 0;
+        }
+        if (lines > 0) {
+            final List<String> consoleLines = consoleOut.readLines(lines);
+            for (String line : consoleLines) {
+                handler.handle(line);
+            }
+            return consoleLines.size();
+        }
+        return consoleOut.readAllLines(handler);
+    }
+
+    /**
+     * Returns the in-memory buffer of the most recent console lines of a server started by the plugin.
+     *
+     * @return the buffer or {@code null} if no server was started by the plugin
+     */
+    ConsoleBuffer getConsoleBuffer() {
+        final ServerConsoleWrapper consoleOut = this.consoleOut;
+        return consoleOut == null ? null : consoleOut.getBuffer();
     }
 
     public ResultMessage deploy(final String path, final boolean force) throws IOException, DeploymentFailedException {
-        return processDeployment(path, (force ? Type.FORCE_DEPLOY : Type.DEPLOY));
+        return deploy(path, force, 0L);
+    }
+
+    /**
+     * Deploys the content waiting at most the timeout for the deployment to finish. A deployment which does not finish
+     * within the timeout is cancelled.
+     *
+     * @param path    the path to the content or {@code null} for the final artifact of the project
+     * @param force   {@code true} if an existing deployment should be replaced
+     * @param timeout the maximum number of seconds to wait, 0 or less to wait until the deployment finishes
+     *
+     * @return the result of the deployment
+     *
+     * @throws IOException               if an error occurs connecting to the server
+     * @throws DeploymentFailedException if the content does not exist
+     */
+    public ResultMessage deploy(final String path, final boolean force, final long timeout) throws IOException, DeploymentFailedException {
+        return processDeployment(path, (force ? Type.FORCE_DEPLOY : Type.DEPLOY), timeout);
+    }
+
+    /**
+     * Starts deploying the content in the background. Only one background deployment can be executing at a time.
+     *
+     * @param path the path to the content or {@code null} for the final artifact of the project
+     * @param type the type of the deployment
+     *
+     * @return the handle of the deployment, use {@link #getResult(DeploymentHandle, long)} to retrieve the result
+     *
+     * @throws IOException               if an error occurs connecting to the server
+     * @throws DeploymentFailedException if the content does not exist or a background deployment is executing
+     */
+    public DeploymentHandle deployInBackground(final String path, final Type type) throws IOException, DeploymentFailedException {
+        synchronized (this) {
+            final DeploymentHandle current = backgroundDeployment;
+            if (current != null && !current.isDone()) {
+                throw new DeploymentFailedException(messages.getMessage("deployment.background.running", current));
+            }
+            backgroundDeployment = startDeployment(path, type);
+            return backgroundDeployment;
+        }
+    }
+
+    /**
+     * Returns the handle of the last deployment started in the background.
+     *
+     * @return the handle or {@code null} if no deployment was started in the background
+     */
+    public DeploymentHandle getBackgroundDeployment() {
+        return backgroundDeployment;
+    }
+
+    /**
+     * Waits for the deployment to finish and returns the result. The state of the server is updated based on the
+     * result.
+     *
+     * @param handle  the handle of the deployment
+     * @param timeout the maximum number of seconds to wait, 0 or less to wait until the deployment finishes
+     *
+     * @return the result of the deployment
+     */
+    public ResultMessage getResult(final DeploymentHandle handle, final long timeout) {
+        ResultMessage result;
+        try {
+            final Status status = handle.get(timeout, TimeUnit.SECONDS);
+            stateTracker.update(configuration.getHostname(), configuration.getPort(), status);
+            if (status == Status.UNCHANGED) {
+                result = ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.unchanged", handle.getName(), handle.getType()));
+            } else {
+                result = ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.successful.time", handle.getType(), handle.getElapsedTime()));
+            }
+        } catch (DeploymentFailedException e) {
+            stateTracker.invalidate(configuration.getHostname(), configuration.getPort());
+            if (e.getCause() != null) {
+                result = ResultMessage.of(Level.ERROR, e.getLocalizedMessage() + ": " + e.getCause()
+                        .getLocalizedMessage());
+            } else {
+                result = ResultMessage.of(Level.ERROR, e.getLocalizedMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deploys the content only writing the entries that changed since the last delta deployment. The server must be
+     * running on the local machine, otherwise the whole content is deployed.
+     *
+     * @param path the path to the content or {@code null} for the final artifact of the project
+     *
+     * @return the result of the deployment
+     *
+     * @throws IOException               if an error occurs connecting to the server
+     * @throws DeploymentFailedException if the content does not exist
+     */
+    public ResultMessage deployDelta(final String path) throws IOException, DeploymentFailedException {
+        if (!isLocalHost(configuration.getHostname())) {
+            final ResultMessage result = processDeployment(path, Type.FORCE_DEPLOY);
+            if (result.getLevel() == Level.SUCCESS) {
+                return ResultMessage.of(Level.SUCCESS, result.getMessage() + " " + messages.getMessage("deployment.delta.remote", configuration.getHostname()));
+            }
+            return result;
+        }
+        final File content = resolveContent(path, Type.FORCE_DEPLOY);
+        final DeltaDeployment deployment = DeltaDeployment.create(getClient(), content, null, getStagingDirectory());
+        try {
+            stateTracker.update(configuration.getHostname(), configuration.getPort(), deployment.execute());
+            if (deployment.isDelta()) {
+                return ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.delta.successful", deployment.getEntriesChanged(),
+                        deployment.getEntriesTotal(), deployment.getBytesWritten(), deployment.getBytesSaved()));
+            }
+            return ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.delta.full", deployment.getEntriesTotal(), deployment.getBytesWritten()));
+        } catch (DeploymentFailedException e) {
+            stateTracker.invalidate(configuration.getHostname(), configuration.getPort());
+            if (e.getCause() != null) {
+                return ResultMessage.of(Level.ERROR, e.getLocalizedMessage() + ": " + e.getCause().getLocalizedMessage());
+            }
+            return ResultMessage.of(Level.ERROR, e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Deploys the project as an exploded deployment the server reads directly from a directory. Changed static
+     * resources are updated in place, the deployment is only redeployed when classes, libraries or descriptors change.
+     * The server must be running on the local machine.
+     *
+     * @return the result of the deployment
+     *
+     * @throws IOException               if an error occurs connecting to the server
+     * @throws DeploymentFailedException if the project has not been built
+     */
+    public ResultMessage deployExploded() throws IOException, DeploymentFailedException {
+        if (!isLocalHost(configuration.getHostname())) {
+            return ResultMessage.of(Level.ERROR, messages.getMessage("deployment.exploded.remote", configuration.getHostname()));
+        }
+        final PackagingFacet packagingFacet = project.getFacet(PackagingFacet.class);
+        final String name = packagingFacet.getFinalArtifact().getName();
+        final File projectRoot = new File(project.getProjectRoot().getFullyQualifiedName());
+        final File buildDir = new File(projectRoot, "target");
+        final File classesDir = new File(buildDir, "classes");
+        final boolean war = name.endsWith(".war");
+        final ExplodedDeployment deployment = ExplodedDeployment.create(getClient(), name, getStagingDirectory(), war || name.endsWith(".ear"));
+        if (war || name.endsWith(".ear")) {
+            // The exploded directory created by the packaging plugin contains the libraries and generated resources
+            final File packagedDir = new File(buildDir, packagingFacet.getFinalName());
+            if (!packagedDir.isDirectory()) {
+                throw new DeploymentFailedException(messages.getMessage("deployment.not.found", packagedDir, Type.FORCE_DEPLOY));
+            }
+            deployment.addSource(packagedDir, "");
+            if (war) {
+                // Use the sources directly so changes do not require the project to be packaged
+                deployment.addSource(new File(projectRoot, Files.createPath("src", "main", "webapp")), "");
+                deployment.addSource(classesDir, "WEB-INF/classes");
+            }
+        } else {
+            if (!classesDir.isDirectory()) {
+                throw new DeploymentFailedException(messages.getMessage("deployment.not.found", classesDir, Type.FORCE_DEPLOY));
+            }
+            deployment.addSource(classesDir, "");
+        }
+        try {
+            stateTracker.update(configuration.getHostname(), configuration.getPort(), deployment.execute());
+            final int changes = deployment.getUpdated().size() + deployment.getRemoved().size();
+            if (deployment.isRedeployed()) {
+                return ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.exploded.redeployed", name, changes));
+            }
+            return ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.exploded.synced", name, changes));
+        } catch (DeploymentFailedException e) {
+            stateTracker.invalidate(configuration.getHostname(), configuration.getPort());
+            if (e.getCause() != null) {
+                return ResultMessage.of(Level.ERROR, e.getLocalizedMessage() + ": " + e.getCause().getLocalizedMessage());
+            }
+            return ResultMessage.of(Level.ERROR, e.getLocalizedMessage());
+        }
     }
 
     public ResultMessage redeploy(final String path) throws IOException, DeploymentFailedException {
-        return processDeployment(path, Type.REDEPLOY);
+        return redeploy(path, 0L);
+    }
+
+    /**
+     * Redeploys the content waiting at most the timeout for the deployment to finish. A deployment which does not
+     * finish within the timeout is cancelled.
+     *
+     * @param path    the path to the content or {@code null} for the final artifact of the project
+     * @param timeout the maximum number of seconds to wait, 0 or less to wait until the deployment finishes
+     *
+     * @return the result of the deployment
+     *
+     * @throws IOException               if an error occurs connecting to the server
+     * @throws DeploymentFailedException if the content does not exist
+     */
+    public ResultMessage redeploy(final String path, final long timeout) throws IOException, DeploymentFailedException {
+        return processDeployment(path, Type.REDEPLOY, timeout);
     }
 
     public ResultMessage undeploy(final String path, final boolean ignoreMissing) throws IOException, DeploymentFailedException {
         return processDeployment(path, (ignoreMissing ? Type.UNDEPLOY_IGNORE_MISSING : Type.UNDEPLOY));
     }
 
+    /**
+     * Deploys the final artifact of the project and the deployable artifacts of all modules in a single deployment
+     * plan. Modules packaged into an EAR of the project are only deployed as part of the EAR.
+     *
+     * @param force    {@code true} if existing deployments should be replaced
+     * @param rollback {@code true} if a failure of any deployment should roll back all the deployments
+     *
+     * @return the result of the deployments, including the result for each artifact
+     *
+     * @throws IOException if an error occurs connecting to the server
+     */
+    public ResultMessage deployAll(final boolean force, final boolean rollback) throws IOException {
+        final Type type = (force ? Type.FORCE_DEPLOY : Type.DEPLOY);
+        final Set<File> artifacts = findDeployableArtifacts();
+        if (artifacts.isEmpty()) {
+            return ResultMessage.of(Level.ERROR, messages.getMessage("deployment.batch.none", project.getProjectRoot().getFullyQualifiedName(), type));
+        }
+        final StandaloneDeploymentBatch batch = StandaloneDeploymentBatch.create(getClient(), rollback);
+        try {
+            for (File artifact : artifacts) {
+                batch.add(artifact, null, type);
+            }
+            final List<DeploymentResult> results = batch.execute();
+            int successful = 0;
+            final StringBuilder details = new StringBuilder();
+            for (DeploymentResult result : results) {
+                if (result.isSuccessful()) {
+                    successful++;
+                    stateTracker.update(configuration.getHostname(), configuration.getPort(), result.getStatus());
+                }
+                details.append(String.format("%n  ")).append(result);
+            }
+            if (successful != results.size()) {
+                stateTracker.invalidate(configuration.getHostname(), configuration.getPort());
+            }
+            final Level level = (successful == results.size() ? Level.SUCCESS : Level.ERROR);
+            return ResultMessage.of(level, messages.getMessage("deployment.batch.result", successful, results.size(), type) + details);
+        } catch (DeploymentFailedException e) {
+            stateTracker.invalidate(configuration.getHostname(), configuration.getPort());
+            if (e.getCause() != null) {
+                return ResultMessage.of(Level.ERROR, e.getLocalizedMessage() + ": " + e.getCause().getLocalizedMessage());
+            }
+            return ResultMessage.of(Level.ERROR, e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Deploys the content to each of the targets concurrently. At most {@value #MAX_PARALLEL_DEPLOYMENTS} deployments
+     * are executed at the same time.
+     * <p/>
+     * The connection to each target is established and authenticated one target at a time on the calling thread
+     * before any deployment is submitted, this ensures the user is never prompted for credentials from more than one
+     * thread at the same time. Targets that could not be connected to are reported as failed and are not deployed to.
+     *
+     * @param path    the path to the content or {@code null} for the final artifact of the project
+     * @param type    the type of the deployment
+     * @param targets the servers to deploy to
+     *
+     * @return the result of the deployments, including the result and time for each target
+     *
+     * @throws DeploymentFailedException if the content does not exist
+     */
+    public ResultMessage deployToTargets(final String path, final Type type, final Collection<ServerTarget> targets) throws DeploymentFailedException {
+        final File content = resolveContent(path, type);
+        final long start = System.nanoTime();
+        // Connect serially so any credential prompts happen on this thread only
+        final Map<ServerTarget, ModelControllerClient> clients = new LinkedHashMap<ServerTarget, ModelControllerClient>();
+        final Map<ServerTarget, ResultMessage> results = new LinkedHashMap<ServerTarget, ResultMessage>();
+        for (ServerTarget target : targets) {
+            final long connectStart = System.nanoTime();
+            try {
+                clients.put(target, connect(target));
+            } catch (IOException e) {
+                stateTracker.invalidate(target.getHostname(), target.getPort());
+                results.put(target, ResultMessage.of(Level.ERROR, messages.getMessage("deployment.target.failed", e.getLocalizedMessage(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart))));
+            }
+        }
+        final Map<ServerTarget, Future<ResultMessage>> futures = new LinkedHashMap<ServerTarget, Future<ResultMessage>>();
+        for (final Map.Entry<ServerTarget, ModelControllerClient> entry : clients.entrySet()) {
+            futures.put(entry.getKey(), DEPLOYMENT_EXECUTOR.submit(new Callable<ResultMessage>() {
+                @Override
+                public ResultMessage call() {
+                    return deployToTarget(entry.getValue(), content, type, entry.getKey());
+                }
+            }));
+        }
+        int successful = 0;
+        final StringBuilder details = new StringBuilder();
+        try {
+            for (ServerTarget target : targets) {
+                ResultMessage result = results.get(target);
+                if (result == null) {
+                    try {
+                        result = futures.get(target).get();
+                    } catch (ExecutionException e) {
+                        result = ResultMessage.of(Level.ERROR, e.getCause().getLocalizedMessage());
+                    }
+                }
+                if (result.getLevel() == Level.SUCCESS) {
+                    successful++;
+                }
+                details.append(String.format("%n  %s: %s", target, result.getMessage()));
+            }
+        } catch (InterruptedException e) {
+            for (Future<ResultMessage> future : futures.values()) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            return ResultMessage.of(Level.ERROR, messages.getMessage("deployment.cancelled", content.getName()));
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        final Level level = (successful == targets.size() ? Level.SUCCESS : Level.ERROR);
+        return ResultMessage.of(level, messages.getMessage("deployment.targets.result", successful, targets.size(), type, elapsed) + details);
+    }
+
+    /**
+     * Deploys the content to the server groups of the managed domain. The content is uploaded to the domain controller
+     * once and deployed to all the server groups in parallel by a single operation. If the deployment fails on any
+     * server group it is rolled back on all of them.
+     *
+     * @param path         the path to the content or {@code null} for the final artifact of the project
+     * @param type         the type of the deployment
+     * @param serverGroups the server groups to deploy to
+     *
+     * @return the result of the deployment
+     *
+     * @throws IOException               if an error occurs connecting to the domain controller
+     * @throws DeploymentFailedException if the content does not exist
+     */
+    public ResultMessage deployToServerGroups(final String path, final Type type, final Collection<String> serverGroups) throws IOException, DeploymentFailedException {
+        final File content = resolveContent(path, type);
+        final long start = System.nanoTime();
+        final DomainDeployment deployment = DomainDeployment.create(getClient(), content, null, type, serverGroups);
+        ResultMessage result;
+        try {
+            final Status status = deployment.execute();
+            stateTracker.update(configuration.getHostname(), configuration.getPort(), status);
+            if (status == Status.UNCHANGED) {
+                result = ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.unchanged", deployment.getName(), type));
+            } else {
+                result = ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.server.groups.successful", type, serverGroups,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            }
+        } catch (DeploymentFailedException e) {
+            stateTracker.invalidate(configuration.getHostname(), configuration.getPort());
+            if (e.getCause() != null) {
+                result = ResultMessage.of(Level.ERROR, e.getLocalizedMessage() + ": " + e.getCause().getLocalizedMessage());
+            } else {
+                result = ResultMessage.of(Level.ERROR, e.getLocalizedMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the shared client for the target and executes a lightweight operation to ensure the connection has been
+     * established and authenticated.
+     *
+     * @param target the target to connect to
+     *
+     * @return the connected client
+     *
+     * @throws IOException if the connection could not be established
+     */
+    private ModelControllerClient connect(final ServerTarget target) throws IOException {
+        final ModelControllerClient client = serverController.getSharedClient(target.getHostname(), target.getPort(), callbackHandler);
+        client.execute(ServerOperations.READ_LAUNCH_TYPE_OP);
+        return client;
+    }
+
+    private ResultMessage deployToTarget(final ModelControllerClient client, final File content, final Type type, final ServerTarget target) {
+        final long start = System.nanoTime();
+        try {
+            final Status status = StandaloneDeployment.create(client, content, null, type).execute();
+            stateTracker.update(target.getHostname(), target.getPort(), status);
+            return ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.target.successful", status, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        } catch (Exception e) {
+            stateTracker.invalidate(target.getHostname(), target.getPort());
+            final String msg = (e.getCause() != null ? e.getLocalizedMessage() + ": " + e.getCause().getLocalizedMessage() : e.getLocalizedMessage());
+            return ResultMessage.of(Level.ERROR, messages.getMessage("deployment.target.failed", msg, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
+    }
+
     public ResultMessage executeCommand(final String cmd) throws IOException {
         if (!getState().isRunningState()) {
             return ResultMessage.of(Level.ERROR, messages.getMessage("server.not.running", configuration.getHostname(), configuration
                     .getPort()));
         }
+        final long start = System.nanoTime();
         ResultMessage result;
         try {
             final ModelControllerClient client = getClient();
             final CommandContext ctx = CommandContextFactory.getInstance().newCommandContext();
             final ModelNode op = ctx.buildRequest(cmd);
-            final ModelNode outcome = client.execute(op);
+            final ModelNode outcome;
+            try {
+                outcome = client.execute(op);
+            } catch (IOException e) {
+                stateTracker.invalidate(configuration.getHostname(), configuration.getPort());
+                Metrics.INSTANCE.recordFailure(Metrics.CLI);
+                throw e;
+            }
+            final String opName = op.get(ClientConstants.OP).asString();
+            if (ServerOperations.RELOAD.equals(opName) || ServerOperations.SHUTDOWN.equals(opName)) {
+                stateTracker.invalidate(configuration.getHostname(), configuration.getPort());
+            } else {
+                stateTracker.update(configuration.getHostname(), configuration.getPort(), outcome);
+            }
             if (ServerOperations.isSuccessfulOutcome(outcome)) {
                 result = ResultMessage.of(Level.SUCCESS, outcome.toString());
             } else {
@@ -155,37 +638,103 @@ class AS7ServerFacet extends BaseFacet {
         } catch (CommandFormatException e) {
             result = ResultMessage.of(Level.ERROR, messages.getMessage("cmd.invalid", cmd, e.getLocalizedMessage()));
         }
+        if (result.getLevel() == Level.SUCCESS) {
+            Metrics.INSTANCE.record(Metrics.CLI, System.nanoTime() - start);
+        } else {
+            Metrics.INSTANCE.recordFailure(Metrics.CLI);
+        }
         return result;
     }
 
     public ResultMessage start(final File jbossHome, final Version version, final String javaHome) throws IOException {
+        return start(jbossHome, version, javaHome, configuration.isDomain());
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @param jbossHome the home directory of the server or {@code null} for the configured directory
+     * @param version   the version of the server
+     * @param javaHome  the Java home directory or {@code null} for the configured directory
+     * @param domain    {@code true} to start a managed domain rather than a standalone server
+     *
+     * @return the result of starting the server
+     *
+     * @throws IOException if the server process could not be created
+     */
+    public ResultMessage start(final File jbossHome, final Version version, final String javaHome, final boolean domain) throws IOException {
+        return start(jbossHome, version, javaHome, domain, null);
+    }
+
+    /**
+     * Starts the server with the JVM options of the launch profile. The boot time and resident set size of the server
+     * are recorded for the profile.
+     *
+     * @param jbossHome the home directory of the server or {@code null} for the configured directory
+     * @param version   the version of the server
+     * @param javaHome  the Java home directory or {@code null} for the configured directory
+     * @param domain    {@code true} to start a managed domain rather than a standalone server
+     * @param profile   the launch profile or {@code null} to only use the configured JVM arguments
+     *
+     * @return the result of starting the server
+     *
+     * @throws IOException if the server process could not be created
+     */
+    public ResultMessage start(final File jbossHome, final Version version, final String javaHome, final boolean domain, final LaunchProfile profile) throws IOException {
         ResultMessage result;
-        if ((serverController.hasServer() && serverController.getServer().isRunning()) || getState().isRunningState()) {
+        if ((serverController.hasServer() && serverController.getServer().isRunning()) || getState(true).isRunningState()) {
             result = ResultMessage.of(Level.ERROR, messages.getMessage("server.already.running"));
+        } else if (profile != null && domain) {
+            result = ResultMessage.of(Level.ERROR, messages.getMessage("profile.domain", profile.getName()));
         } else {
-            // Clean-up possible old console output
+            // Clean-up possible old console output and a previously adopted standby server
             closeConsoleOutput();
-            consoleOut = new ServerConsoleWrapper();
+            releaseStandby();
             final File targetHome = jbossHome == null ? configuration.getJbossHome() : jbossHome;
             final String jreHome = javaHome == null ? configuration.getJavaHome() : javaHome;
-            final Server server = ServerBuilder.of(callbackHandler, targetHome, version.requiresLogModule())
-                    .setBundlesDir(configuration.getBundlesDir())
-                    .setHostAddress(InetAddress.getByName(configuration.getHostname()))
-                    .setJavaHome(jreHome)
-                    .setJvmArgs(configuration.getJvmArgs())
-                    .setModulesDir(configuration.getModulesDir())
+            if (profile != null) {
+                final String error = profile.verify(jreHome);
+                if (error != null) {
+                    return ResultMessage.of(Level.ERROR, messages.getMessage("profile.rejected", profile.getName(), error));
+                }
+            }
+            // Standby servers are booted with the configured Java home and JVM arguments
+            final boolean useStandby = configuration.isStandby() && !domain && javaHome == null && profile == null;
+            if (useStandby) {
+                final long start = System.nanoTime();
+                final StandbyPool.Standby adopted = standbyPool.take(version, targetHome, createStandbyBuilder(version, targetHome));
+                if (adopted != null) {
+                    standby = adopted;
+                    consoleOut = adopted.getConsole();
+                    serverController.setServer(adopted.getServer());
+                    stateTracker.update(configuration.getHostname(), configuration.getPort(), State.RUNNING);
+                    fillStandby(version, targetHome);
+                    return ResultMessage.of(Level.SUCCESS, messages.getMessage("server.start.standby", version,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), adopted.getPortOffset()));
+                }
+            }
+            consoleOut = createConsoleOutput();
+            // Class data sharing only applies to standalone servers
+            final ClassDataSharing classDataSharing = (configuration.isClassDataSharing() && !domain ? ClassDataSharing.of(version.toString(), jreHome) : null);
+            final Server server = createServerBuilder(targetHome, version, jreHome)
                     .setOutputStream(consoleOut)
-                    .setPort(configuration.getPort())
-                    .setServerConfig(configuration.getServerConfigFile())
+                    .setDomain(domain)
+                    .setHostConfig(configuration.getHostConfigFile())
+                    .setClassDataSharing(classDataSharing)
+                    .setJvmArgs(getJvmArgs(profile))
                     .build();
             server.start(configuration.getStartupTimeout());
             try {
                 if (server.isRunning()) {
-                    result = ResultMessage.of(Level.SUCCESS, messages.getMessage("server.start.success", configuration
-                            .getVersion()));
-                    // Close any previously connected clients
-                    serverController.closeClient();
+                    result = ResultMessage.of(Level.SUCCESS, messages.getMessage("server.start.success.time", version,
+                            server.getStartupTime())
+                            + recordLaunchProfile(profile, server));
+                    // Setting the server closes any previously connected clients
                     serverController.setServer(server);
+                    stateTracker.update(configuration.getHostname(), configuration.getPort(), State.RUNNING);
+                    if (useStandby) {
+                        fillStandby(version, targetHome);
+                    }
                 } else {
                     result = ResultMessage.of(Level.ERROR, messages.getMessage("server.start.failed", configuration.getVersion()));
                 }
@@ -200,20 +749,73 @@ class AS7ServerFacet extends BaseFacet {
         return result;
     }
 
+    /**
+     * Enables or disables the standby server pool. When enabled a standby server for the configured version and
+     * installation is booted in the background, when disabled all standby servers are stopped.
+     *
+     * @param enabled {@code true} to enable the pool, {@code false} to disable it
+     *
+     * @return {@code true} if a standby server is booting, otherwise {@code false}
+     */
+    public boolean setStandby(final boolean enabled) {
+        configuration.setStandby(enabled);
+        if (!enabled) {
+            standbyPool.drain();
+            return false;
+        }
+        final File jbossHome = configuration.getJbossHome();
+        if (configuration.isDomain() || !isValidJBossHome(jbossHome)) {
+            return false;
+        }
+        return fillStandby(configuration.getVersion(), jbossHome);
+    }
+
+    /**
+     * Returns the number of standby servers, including servers still booting.
+     *
+     * @return the number of standby servers
+     */
+    public int getStandbyCount() {
+        return standbyPool.size();
+    }
+
+    /**
+     * Returns the state of the server. A cached state is returned if it was retrieved within the {@link
+     * ProjectConfiguration#getStateCacheTimeout() state cache timeout}.
+     *
+     * @return the state of the server
+     */
     public State getState() {
-        State result = State.SHUTDOWN;
+        return getState(false);
+    }
+
+    /**
+     * Returns the state of the server.
+     *
+     * @param refresh {@code true} if the state should always be read from the server, otherwise a cached state may be
+     *                returned
+     *
+     * @return the state of the server
+     */
+    public State getState(final boolean refresh) {
+        final String hostname = configuration.getHostname();
+        final int port = configuration.getPort();
         try {
-            final ModelNode response = getClient().execute(ServerOperations.READ_STATE_OP);
-            if (ServerOperations.isSuccessfulOutcome(response)) {
-                result = State.fromModel(ServerOperations.readResult(response));
+            if (refresh) {
+                return stateTracker.readState(hostname, port, getClient());
             }
-        } catch (IOException ignore) {
-            result = State.UNKNOWN;
+            return stateTracker.getState(hostname, port, getClient(), configuration.getStateCacheTimeout());
+        } catch (UnknownHostException ignore) {
+            return State.UNKNOWN;
         }
-        return result;
+    }
+
+    ServerStateTracker getStateTracker() {
+        return stateTracker;
     }
 
     public ResultMessage shutdown() {
+        stateTracker.invalidate(configuration.getHostname(), configuration.getPort());
         ResultMessage result = ResultMessage.of(Level.SUCCESS, messages.getMessage("server.shutdown.success"));
         final Server server = serverController.getServer();
         if (server == null) {
@@ -227,21 +829,31 @@ class AS7ServerFacet extends BaseFacet {
             } catch (IOException e) {
                 result = ResultMessage.of(Level.ERROR, e.getLocalizedMessage());
             } finally {
-                serverController.closeClient();
+                serverController.closeClient(configuration.getHostname(), configuration.getPort());
             }
         } else {
-            serverController.shutdownServer();
+            final ShutdownReport report = serverController.shutdownServer(configuration.getShutdownTimeout());
+            releaseStandby();
+            if (report != null) {
+                if (report.isStopped()) {
+                    result = ResultMessage.of(Level.SUCCESS, messages.getMessage("server.shutdown.success.stages", report.getTotalTime(), report));
+                } else {
+                    result = ResultMessage.of(Level.ERROR, messages.getMessage("server.shutdown.failed", report));
+                }
+            }
         }
         return result;
     }
 
-    protected void closeClient(@Observes final ProjectChanged event) {
-        serverController.closeClient();
-    }
-
     protected void shutdownServer(@Observes final PreShutdown event) {
-        serverController.shutdownServer();
+        final DeploymentHandle deployment = backgroundDeployment;
+        if (deployment != null) {
+            deployment.cancel();
+        }
+        serverController.shutdownServer(configuration.getShutdownTimeout());
         serverController.closeClient();
+        releaseStandby();
+        standbyPool.drain();
         closeConsoleOutput();
     }
 
@@ -259,9 +871,8 @@ class AS7ServerFacet extends BaseFacet {
         return false;
     }
 
-    private ResultMessage processDeployment(final String path, final Type type) throws IOException, DeploymentFailedException {
+    private File resolveContent(final String path, final Type type) throws DeploymentFailedException {
         final PackagingFacet packagingFacet = project.getFacet(PackagingFacet.class);
-        ResultMessage result;
         // Can't deploy what doesn't exist
         if (!packagingFacet.getFinalArtifact().exists())
             throw new DeploymentFailedException(messages.getMessage("deployment.not.found", path, type));
@@ -274,32 +885,193 @@ class AS7ServerFacet extends BaseFacet {
             // TODO this might not work for EAR deployments
             content = new File(packagingFacet.getFinalArtifact().getParent().getFullyQualifiedName(), path);
         }
-        final ModelControllerClient client = getClient();
-        try {
-            final Deployment deployment = StandaloneDeployment.create(client, content, null, type);
-            deployment.execute();
-            result = ResultMessage.of(Level.SUCCESS, messages.getMessage("deployment.successful", type));
-        } catch (DeploymentFailedException e) {
-            if (e.getCause() != null) {
-                result = ResultMessage.of(Level.ERROR, e.getLocalizedMessage() + ": " + e.getCause()
-                        .getLocalizedMessage());
-            } else {
-                result = ResultMessage.of(Level.ERROR, e.getLocalizedMessage());
+        return content;
+    }
+
+    private ResultMessage processDeployment(final String path, final Type type) throws IOException, DeploymentFailedException {
+        return processDeployment(path, type, 0L);
+    }
+
+    private ResultMessage processDeployment(final String path, final Type type, final long timeout) throws IOException, DeploymentFailedException {
+        return getResult(startDeployment(path, type), timeout);
+    }
+
+    private DeploymentHandle startDeployment(final String path, final Type type) throws IOException, DeploymentFailedException {
+        final File content = resolveContent(path, type);
+        return StandaloneDeployment.create(getClient(), content, null, type).executeAsync();
+    }
+
+    /**
+     * Finds the final artifacts of the project and all its modules which can be deployed. Modules packaged into an EAR
+     * of the project are left out as the EAR deploys them.
+     */
+    private Set<File> findDeployableArtifacts() {
+        final Map<String, Project> modules = new LinkedHashMap<String, Project>();
+        collectModules(project, modules);
+        final Set<String> packaged = new HashSet<String>();
+        for (Project module : modules.values()) {
+            final MavenProject mavenProject = getMavenProject(module);
+            if ("ear".equals(mavenProject.getPackaging())) {
+                for (Dependency dependency : mavenProject.getDependencies()) {
+                    final String scope = dependency.getScope();
+                    if (scope == null || "compile".equals(scope) || "runtime".equals(scope)) {
+                        packaged.add(dependency.getGroupId() + ":" + dependency.getArtifactId());
+                    }
+                }
+            }
+        }
+        final Set<File> result = new LinkedHashSet<File>();
+        for (Map.Entry<String, Project> entry : modules.entrySet()) {
+            final Project module = entry.getValue();
+            if (packaged.contains(entry.getKey()) || !DEPLOYABLE_PACKAGINGS.contains(getMavenProject(module).getPackaging())) {
+                continue;
+            }
+            final Resource<?> finalArtifact = module.getFacet(PackagingFacet.class).getFinalArtifact();
+            if (finalArtifact.exists()) {
+                final File file = new File(finalArtifact.getFullyQualifiedName());
+                if (file.isFile()) {
+                    result.add(file.getAbsoluteFile());
+                }
             }
         }
         return result;
     }
 
+    /**
+     * Adds the project and the modules declared by the project, recursively, keyed by the group and artifact id.
+     */
+    private void collectModules(final Project parent, final Map<String, Project> modules) {
+        final MavenProject mavenProject = getMavenProject(parent);
+        if (modules.put(mavenProject.getGroupId() + ":" + mavenProject.getArtifactId(), parent) != null) {
+            return;
+        }
+        final File projectRoot = new File(parent.getProjectRoot().getFullyQualifiedName());
+        for (String name : mavenProject.getModules()) {
+            File moduleDir = new File(projectRoot, name);
+            // A module may also point to the POM of the module
+            if (moduleDir.isFile()) {
+                moduleDir = moduleDir.getParentFile();
+            }
+            final Resource<?> resource = resourceFactory.getResourceFrom(moduleDir);
+            if (resource instanceof DirectoryResource) {
+                final Project module = projectFactory.findProject((DirectoryResource) resource);
+                if (module != null) {
+                    collectModules(module, modules);
+                }
+            }
+        }
+    }
+
+    private static MavenProject getMavenProject(final Project project) {
+        return project.getFacet(MavenCoreFacet.class).getPartialProjectBuildingResult().getProject();
+    }
+
+    /**
+     * Returns the directory deployments are exploded in for delta and exploded deployments. The server reads the
+     * deployment from this directory, including when it boots, so the directory must live as long as the server. If
+     * the home directory of the server is known the data directory of the server is used, otherwise the build
+     * directory of the project.
+     */
+    private File getStagingDirectory() {
+        final String projectRoot = project.getProjectRoot().getFullyQualifiedName();
+        final File jbossHome = configuration.getJbossHome();
+        if (!configuration.isDomain() && isValidJBossHome(jbossHome)) {
+            return new File(jbossHome, Files.createPath("standalone", "data", "forge-deployments", Integer.toHexString(projectRoot.hashCode())));
+        }
+        return new File(projectRoot, Files.createPath("target", "forge-deployments"));
+    }
+
+    private static boolean isLocalHost(final String hostname) {
+        try {
+            final InetAddress address = InetAddress.getByName(hostname);
+            return address.isLoopbackAddress() || address.isAnyLocalAddress() || NetworkInterface.getByInetAddress(address) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     private ModelControllerClient getClient() throws UnknownHostException {
-        final ModelControllerClient client;
-        if (serverController.hasClient()) {
-            client = serverController.getClient();
-        } else {
-            client = ModelControllerClient.Factory
-                    .create(configuration.getHostname(), configuration.getPort(), callbackHandler);
-            serverController.setClient(client);
+        return serverController.getClient(configuration.getHostname(), configuration.getPort(), callbackHandler);
+    }
+
+    private ServerBuilder createServerBuilder(final File jbossHome, final Version version, final String javaHome) throws UnknownHostException {
+        return ServerBuilder.of(callbackHandler, jbossHome, version.requiresLogModule())
+                .setBundlesDir(configuration.getBundlesDir())
+                .setHostAddress(InetAddress.getByName(configuration.getHostname()))
+                .setJavaHome(javaHome)
+                .setJvmArgs(configuration.getJvmArgs())
+                .setModulesDir(configuration.getModulesDir())
+                .setPort(configuration.getPort())
+                .setServerConfig(configuration.getServerConfigFile());
+    }
+
+    /**
+     * Returns the JVM options of the launch profile followed by the configured JVM arguments, so the configured
+     * arguments override the options of the profile.
+     */
+    private String[] getJvmArgs(final LaunchProfile profile) {
+        final String[] jvmArgs = configuration.getJvmArgs();
+        if (profile == null) {
+            return jvmArgs;
+        }
+        final List<String> result = new ArrayList<String>(profile.getJvmArgs());
+        if (jvmArgs != null) {
+            Collections.addAll(result, jvmArgs);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Records the boot time and resident set size of the server for the launch profile and describes them.
+     */
+    private String recordLaunchProfile(final LaunchProfile profile, final Server server) {
+        if (profile == null) {
+            return "";
+        }
+        final long rss = Processes.getResidentSetSize(server.getProcessId());
+        configuration.recordLaunchProfile(profile.getName(), server.getStartupTime(), rss);
+        return " " + messages.getMessage("server.start.profile", profile.getName(), server.getStartupTime(), formatSize(rss));
+    }
+
+    /**
+     * Formats a size in bytes as megabytes.
+     */
+    static String formatSize(final long bytes) {
+        return (bytes < 0L ? "unknown" : String.format("%.1f MB", bytes / (1024.0 * 1024.0)));
+    }
+
+    private ServerConsoleWrapper createConsoleOutput() throws IOException {
+        return new ServerConsoleWrapper(configuration.getConsoleSegmentSize(), configuration.getConsoleSegments(),
+                TimeUnit.SECONDS.toMillis(configuration.getConsoleSegmentAge()), configuration.isConsoleCompress());
+    }
+
+    private boolean fillStandby(final Version version, final File jbossHome) {
+        try {
+            return standbyPool.fill(version, jbossHome, createStandbyBuilder(version, jbossHome), createConsoleOutput(), configuration.getStartupTimeout());
+        } catch (IOException ignore) {
+            // The pool is only an optimization, the next start boots a server
+            return false;
+        }
+    }
+
+    /**
+     * Creates the builder for a standby server, which is booted with the same settings as a cold start without a
+     * Java home or launch profile override.
+     */
+    private ServerBuilder createStandbyBuilder(final Version version, final File jbossHome) throws UnknownHostException {
+        final ServerBuilder builder = createServerBuilder(jbossHome, version, configuration.getJavaHome());
+        if (configuration.isClassDataSharing()) {
+            builder.setClassDataSharing(ClassDataSharing.of(version.toString(), configuration.getJavaHome()));
+        }
+        return builder;
+    }
+
+    private void releaseStandby() {
+        final StandbyPool.Standby standby = this.standby;
+        if (standby != null) {
+            this.standby = null;
+            standbyPool.release(standby);
         }
-        return client;
     }
 
     private void closeConsoleOutput() {
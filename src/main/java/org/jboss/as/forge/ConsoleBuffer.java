@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed size, in-memory ring buffer of the most recent console lines.
+ * <p/>
+ * Each line is assigned a sequence number which readers use to follow the console. If a reader falls behind by more
+ * than the capacity of the buffer the oldest lines are lost to that reader.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class ConsoleBuffer {
+
+    private final String[] lines;
+    // Guarded by this
+    private long next;
+    private boolean closed;
+
+    ConsoleBuffer(final int capacity) {
+        lines = new String[capacity];
+        next = 0L;
+        closed = false;
+    }
+
+    /**
+     * Adds a line to the buffer and wakes any waiting readers.
+     *
+     * @param line the line to add
+     */
+    synchronized void add(final String line) {
+        lines[(int) (next % lines.length)] = line;
+        next++;
+        notifyAll();
+    }
+
+    /**
+     * Closes the buffer and wakes any waiting readers. No more lines will be added.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the sequence number the next line added will be assigned.
+     *
+     * @return the next sequence number
+     */
+    synchronized long getNext() {
+        return next;
+    }
+
+    /**
+     * Returns the sequence number of the oldest line still in the buffer.
+     *
+     * @return the oldest sequence number
+     */
+    synchronized long getOldest() {
+        return Math.max(0L, next - lines.length);
+    }
+
+    /**
+     * Copies the lines starting at the sequence number into the list. If the lines starting at the sequence number are
+     * no longer in the buffer the copy starts at the {@link #getOldest() oldest} line.
+     *
+     * @param from the sequence number of the first line to copy
+     * @param into the list to copy the lines into
+     *
+     * @return the sequence number after the last line copied
+     */
+    synchronized long read(final long from, final List<String> into) {
+        long seq = Math.max(from, getOldest());
+        while (seq < next) {
+            into.add(lines[(int) (seq % lines.length)]);
+            seq++;
+        }
+        return seq;
+    }
+
+    /**
+     * Waits for a line with a sequence number at or after the one provided to be added, the buffer to be closed or the
+     * timeout to expire.
+     *
+     * @param seq     the sequence number to wait for
+     * @param timeout the maximum time to wait in milliseconds
+     *
+     * @return {@code true} if a line is available, otherwise {@code false}
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized boolean await(final long seq, final long timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long remaining = timeout;
+        while (next <= seq && !closed && remaining > 0L) {
+            wait(remaining);
+            remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        }
+        return next > seq;
+    }
+}
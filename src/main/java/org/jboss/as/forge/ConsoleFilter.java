@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Filters console lines by a regular expression and/or the minimum log level before passing them to a delegate.
+ * <p/>
+ * Lines without a log level, e.g. stack traces, are filtered based on the level of the last line with a level.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+class ConsoleFilter implements ServerConsoleWrapper.LineHandler {
+
+    public static enum Level {
+        TRACE,
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR,
+        FATAL,
+    }
+
+    /**
+     * Matches the default console pattern of {@code %d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n}.
+     */
+    private static final Pattern LEVEL_PATTERN = Pattern.compile("^\\S+\\s+(TRACE|DEBUG|INFO|WARN|ERROR|FATAL)\\s");
+
+    private final ServerConsoleWrapper.LineHandler delegate;
+    private final Pattern pattern;
+    private final Level level;
+    private boolean levelAccepted;
+    private int count;
+
+    /**
+     * Creates a new filter.
+     *
+     * @param delegate the handler to pass accepted lines to
+     * @param pattern  the pattern a line must contain or {@code null} to accept any line
+     * @param level    the minimum log level or {@code null} to accept any level
+     */
+    ConsoleFilter(final ServerConsoleWrapper.LineHandler delegate, final Pattern pattern, final Level level) {
+        this.delegate = delegate;
+        this.pattern = pattern;
+        this.level = level;
+        levelAccepted = true;
+        count = 0;
+    }
+
+    @Override
+    public void handle(final String line) {
+        if (level != null) {
+            final Matcher matcher = LEVEL_PATTERN.matcher(line);
+            if (matcher.find()) {
+                levelAccepted = Level.valueOf(matcher.group(1)).compareTo(level) >= 0;
+            }
+            if (!levelAccepted) {
+                return;
+            }
+        }
+        if (pattern == null || pattern.matcher(line).find()) {
+            delegate.handle(line);
+            count++;
+        }
+    }
+
+    /**
+     * Returns the number of lines passed to the delegate.
+     *
+     * @return the number of lines accepted
+     */
+    int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+
+import org.jboss.as.forge.ResultMessage.Level;
+import org.jboss.as.forge.server.deployment.ArchiveManifest;
+import org.jboss.as.forge.util.Messages;
+import org.jboss.forge.shell.ShellMessages;
+import org.jboss.forge.shell.ShellPrintWriter;
+
+/**
+ * Watches a deployment archive and redeploys it once the archive has changed and the build writing it has finished.
+ * <p/>
+ * The archive is polled for changes to its size or modification time. Bursts of writes are coalesced into a single
+ * redeploy which is executed once the archive has not changed for the quiet period. Archives whose entries did not
+ * change, e.g. a rebuild without changes, are not redeployed.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@Singleton
+public class DeploymentWatcher {
+
+    /**
+     * Executes the deployment.
+     */
+    interface Deployer {
+
+        /**
+         * Deploys the archive.
+         *
+         * @return the result of the deployment
+         *
+         * @throws Exception if the deployment fails
+         */
+        ResultMessage deploy() throws Exception;
+    }
+
+    static final long DEFAULT_QUIET_PERIOD = 1000L;
+    private static final long POLL_INTERVAL = 250L;
+
+    private Watcher watcher;
+
+    /**
+     * Starts watching the archive. Only one archive can be watched at a time.
+     *
+     * @param archive     the archive to watch
+     * @param quietPeriod the time, in milliseconds, the archive must not change before it is redeployed
+     * @param deployer    the deployer used to redeploy the archive
+     * @param out         the writer the results are written to
+     *
+     * @return {@code true} if the watcher was started, {@code false} if an archive is already being watched
+     */
+    synchronized boolean start(final File archive, final long quietPeriod, final Deployer deployer, final ShellPrintWriter out) {
+        if (watcher != null && watcher.isAlive()) {
+            return false;
+        }
+        watcher = new Watcher(archive, quietPeriod, deployer, out);
+        watcher.start();
+        return true;
+    }
+
+    /**
+     * Stops watching the archive.
+     *
+     * @return {@code true} if a watcher was stopped, {@code false} if no archive was being watched
+     */
+    synchronized boolean stop() {
+        if (watcher == null) {
+            return false;
+        }
+        watcher.interrupt();
+        watcher = null;
+        return true;
+    }
+
+    /**
+     * Checks whether an archive is being watched.
+     *
+     * @return {@code true} if an archive is being watched, otherwise {@code false}
+     */
+    synchronized boolean isWatching() {
+        return watcher != null && watcher.isAlive();
+    }
+
+    @PreDestroy
+    protected void cleanUp() {
+        stop();
+    }
+
+    private static class Watcher extends Thread {
+        private final File archive;
+        private final long quietPeriod;
+        private final Deployer deployer;
+        private final ShellPrintWriter out;
+        private final Messages messages = Messages.INSTANCE;
+
+        Watcher(final File archive, final long quietPeriod, final Deployer deployer, final ShellPrintWriter out) {
+            super("AS7-Deployment-Watcher");
+            setDaemon(true);
+            this.archive = archive;
+            this.quietPeriod = quietPeriod;
+            this.deployer = deployer;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            // The current archive is assumed to be deployed
+            ArchiveManifest deployed = readManifest();
+            long length = archive.length();
+            long lastModified = archive.lastModified();
+            long firstChange = 0L;
+            long lastChange = 0L;
+            boolean pending = false;
+            try {
+                while (!isInterrupted()) {
+                    Thread.sleep(POLL_INTERVAL);
+                    final long now = System.nanoTime();
+                    final long currentLength = archive.length();
+                    final long currentLastModified = archive.lastModified();
+                    if (currentLength != length || currentLastModified != lastModified) {
+                        length = currentLength;
+                        lastModified = currentLastModified;
+                        if (!pending) {
+                            firstChange = now;
+                            pending = true;
+                        }
+                        lastChange = now;
+                        continue;
+                    }
+                    if (!pending || TimeUnit.NANOSECONDS.toMillis(now - lastChange) < quietPeriod || !archive.isFile()) {
+                        continue;
+                    }
+                    // The archive has been quiet for long enough
+                    final long cycleStart = System.nanoTime();
+                    final ArchiveManifest current = readManifest();
+                    if (current == null) {
+                        // Most likely still being written, wait for another quiet period
+                        lastChange = System.nanoTime();
+                        continue;
+                    }
+                    pending = false;
+                    final long waitTime = TimeUnit.NANOSECONDS.toMillis(cycleStart - firstChange);
+                    final long compareTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cycleStart);
+                    if (current.equals(deployed)) {
+                        ShellMessages.info(out, messages.getMessage("watch.unchanged", archive.getName(), waitTime, compareTime));
+                        continue;
+                    }
+                    final long deployStart = System.nanoTime();
+                    ResultMessage result;
+                    try {
+                        result = deployer.deploy();
+                    } catch (Exception e) {
+                        result = ResultMessage.of(Level.ERROR, e.getLocalizedMessage());
+                    }
+                    final long deployTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - deployStart);
+                    if (result.getLevel() == Level.SUCCESS) {
+                        deployed = current;
+                        ShellMessages.success(out, messages.getMessage("watch.redeployed", archive.getName(), waitTime, compareTime, deployTime, waitTime + compareTime + deployTime));
+                    } else {
+                        ShellMessages.error(out, messages.getMessage("watch.failed", archive.getName(), result.getMessage(), deployTime));
+                    }
+                }
+            } catch (InterruptedException ignore) {
+                // Stopped
+            }
+        }
+
+        private ArchiveManifest readManifest() {
+            if (!archive.isFile()) {
+                return null;
+            }
+            try {
+                return ArchiveManifest.of(archive);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
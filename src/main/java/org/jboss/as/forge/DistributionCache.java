@@ -0,0 +1,247 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import javax.inject.Singleton;
+
+import org.jboss.as.forge.util.Files;
+import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Streams;
+
+/**
+ * A persistent cache of extracted server distributions keyed by the version and the checksum of the archive.
+ * <p/>
+ * The cache keeps one pristine extracted copy of each distribution. New server homes are created from the pristine
+ * copy by hard linking the read-only parts of the distribution, e.g. the modules, and copying, or cloning if the file
+ * system supports copy-on-write, the directories a server writes to. The files of the linked directories are
+ * read-only in the pristine copy, as a linked file shares its content with the cache and every other home, so writing
+ * to one of these files in a home fails rather than changing all of them.
+ * <p/>
+ * The cache directory defaults to {@code ~/.forge/jboss-as/dist} and can be overridden with the {@value
+ * #CACHE_DIR_PROPERTY} system property.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@Singleton
+public class DistributionCache {
+
+    static final String CACHE_DIR_PROPERTY = "jboss.as.forge.dist.cache";
+
+    /**
+     * Directories the server or the user may write to, these are never linked.
+     */
+    private static final Set<String> MUTABLE_DIRS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "appclient", "bin", "domain", "standalone", "welcome-content")));
+
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final String READ_ONLY_MARKER = ".read-only";
+    private static final String CHECKSUM_ALGORITHM = "SHA-1";
+    private static final int CHECKSUM_LENGTH = 12;
+
+    private final File cacheDir;
+
+    public DistributionCache() {
+        final String dir = SecurityActions.getProperty(CACHE_DIR_PROPERTY);
+        if (dir == null) {
+            cacheDir = new File(SecurityActions.getProperty("user.home"), Files.createPath(".forge", "jboss-as", "dist"));
+        } else {
+            cacheDir = new File(dir);
+        }
+    }
+
+    /**
+     * Checks whether an extracted copy of any archive for the version is in the cache.
+     *
+     * @param version the version
+     *
+     * @return {@code true} if the version has been cached, otherwise {@code false}
+     */
+    public boolean contains(final Version version) {
+        final String prefix = version + "-";
+        final File[] entries = cacheDir.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                if (entry.getName().startsWith(prefix) && new File(entry, COMPLETE_MARKER).exists()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a new server home from the archive. The archive is only extracted if the cache does not contain a copy
+     * of the archive.
+     *
+     * @param version the version of the archive
+     * @param archive the archive
+     * @param target  the server home to create, must not exist
+     *
+     * @return {@code true} if the server home was created, otherwise {@code false}
+     *
+     * @throws IOException if an error occurs extracting the archive or creating the server home
+     */
+    public boolean createHome(final Version version, final File archive, final File target) throws IOException {
+        final File pristine = getPristineCopy(version, archive);
+        final File parent = target.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            return false;
+        }
+        // Create the home in a sibling directory so a failure does not leave a partial home behind
+        final File tmpDir = new File(parent, String.format(".%s.tmp", target.getName()));
+        if (tmpDir.exists()) {
+            Files.deleteRecursively(tmpDir);
+        }
+        try {
+            if (!tmpDir.mkdir()) {
+                return false;
+            }
+            final File[] children = pristine.listFiles();
+            for (File child : children != null ? children : new File[0]) {
+                final File childTarget = new File(tmpDir, child.getName());
+                final boolean result;
+                if (COMPLETE_MARKER.equals(child.getName()) || READ_ONLY_MARKER.equals(child.getName())) {
+                    continue;
+                } else if (child.isDirectory()) {
+                    result = (MUTABLE_DIRS.contains(child.getName()) ? Files.cloneDirectory(child, childTarget) : Files.linkDirectory(child, childTarget));
+                } else {
+                    result = Files.copyFile(child, childTarget);
+                    if (child.canExecute()) {
+                        childTarget.setExecutable(true, false);
+                    }
+                }
+                if (!result) {
+                    return false;
+                }
+            }
+            return tmpDir.renameTo(target) || Files.moveDirectory(tmpDir, target);
+        } finally {
+            if (tmpDir.exists()) {
+                Files.deleteRecursively(tmpDir);
+            }
+        }
+    }
+
+    /**
+     * Returns the pristine extracted copy of the archive extracting the archive into the cache if required. Any copies
+     * of other archives with the same version are removed.
+     */
+    private synchronized File getPristineCopy(final Version version, final File archive) throws IOException {
+        final String checksum = checksum(archive);
+        final String name = String.format("%s-%s", version, checksum.substring(0, Math.min(CHECKSUM_LENGTH, checksum.length())));
+        final File pristine = new File(cacheDir, name);
+        final File marker = new File(pristine, COMPLETE_MARKER);
+        if (marker.exists()) {
+            // Copies cached before the linked files were made read-only are updated once
+            final File readOnlyMarker = new File(pristine, READ_ONLY_MARKER);
+            if (!readOnlyMarker.exists() && makeLinkedFilesReadOnly(pristine)) {
+                readOnlyMarker.createNewFile();
+            }
+            return pristine;
+        }
+        // Remove partial copies and stale copies of the same version
+        final String prefix = version + "-";
+        final File[] entries = cacheDir.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                if (entry.getName().startsWith(prefix)) {
+                    Files.deleteRecursively(entry);
+                }
+            }
+        }
+        if (!Files.extractAppServer(archive.getAbsolutePath(), pristine, true) || !makeLinkedFilesReadOnly(pristine)
+                || !new File(pristine, READ_ONLY_MARKER).createNewFile() || !marker.createNewFile()) {
+            Files.deleteRecursively(pristine);
+            throw new IOException(Messages.INSTANCE.getMessage("download.cache.failed", archive, cacheDir));
+        }
+        return pristine;
+    }
+
+    /**
+     * Makes the files of the directories which are linked into new server homes read-only.
+     */
+    private static boolean makeLinkedFilesReadOnly(final File pristine) {
+        final File[] children = pristine.listFiles();
+        boolean result = true;
+        for (File child : children != null ? children : new File[0]) {
+            if (child.isDirectory() && !MUTABLE_DIRS.contains(child.getName())) {
+                result = Files.makeFilesReadOnly(child) && result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the checksum of the archive. The checksum file written next to the archive by Maven is used if present,
+     * otherwise the checksum is calculated.
+     */
+    private static String checksum(final File archive) throws IOException {
+        final File checksumFile = new File(archive.getPath() + ".sha1");
+        if (checksumFile.isFile()) {
+            final BufferedReader reader = new BufferedReader(new FileReader(checksumFile));
+            try {
+                final String line = reader.readLine();
+                if (line != null && line.trim().length() >= CHECKSUM_LENGTH) {
+                    // The file may contain the name of the file after the checksum
+                    return line.trim().split("\\s+")[0].toLowerCase(Locale.ENGLISH);
+                }
+            } finally {
+                Streams.safeClose(reader);
+            }
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final InputStream in = new FileInputStream(archive);
+        try {
+            final byte[] buffer = new byte[65536];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, len);
+            }
+        } finally {
+            Streams.safeClose(in);
+        }
+        final StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(String.format("%02x", b & 0xFF));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.sasl.RealmCallback;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.Operation;
+import org.jboss.as.controller.client.OperationMessageHandler;
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.as.forge.server.Metrics;
+import org.jboss.as.forge.server.ServerOperations;
+import org.jboss.as.forge.util.Streams;
+import org.jboss.dmr.ModelNode;
+import org.jboss.threads.AsyncFuture;
+
+/**
+ * A client that is owned by the {@link ServerController}. The underlying connection is shared by all callers and may
+ * be replaced when the connection is re-established.
+ * <p/>
+ * The connection is opened on the thread of the first caller, which authenticates with the callback handler of the
+ * caller and may prompt the user. The answers supplied are recorded so the connection can be re-established in the
+ * background without prompting or using the callback handler outside of the thread of a caller. If the recorded
+ * answers are not sufficient the connection is re-established by the next caller. An idle connection is only closed
+ * when no operation is executing, the client itself stays usable and opens a new connection when it's used again.
+ * <p/>
+ * Invoking {@link #close()} is a no-op as the lifecycle of the client is managed by the {@link ServerController}.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class ManagedClient extends MeasuredClient {
+
+    private final ServerController controller;
+    private final InetAddress address;
+    private final int port;
+    private final CallbackHandler callbackHandler;
+    private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile ModelControllerClient delegate;
+    private volatile long lastUsed;
+    private volatile boolean connected;
+    // The answers recorded from the callback handler of the caller
+    private volatile String username;
+    private volatile char[] password;
+    private volatile String realm;
+
+    ManagedClient(final ServerController controller, final InetAddress address, final int port, final CallbackHandler callbackHandler) {
+        super(null);
+        this.controller = controller;
+        this.address = address;
+        this.port = port;
+        this.callbackHandler = callbackHandler;
+        lastUsed = System.currentTimeMillis();
+        connected = false;
+    }
+
+    @Override
+    public AsyncFuture<ModelNode> executeAsync(final ModelNode operation, final OperationMessageHandler messageHandler) {
+        final AsyncFuture<ModelNode> result;
+        try {
+            result = acquire().executeAsync(operation, messageHandler);
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+        result.addListener(new ReleaseListener(), null);
+        return result;
+    }
+
+    @Override
+    public AsyncFuture<ModelNode> executeAsync(final Operation operation, final OperationMessageHandler messageHandler) {
+        final AsyncFuture<ModelNode> result;
+        try {
+            result = acquire().executeAsync(operation, messageHandler);
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+        result.addListener(new ReleaseListener(), null);
+        return result;
+    }
+
+    /**
+     * Does nothing as the connection is shared. Use {@link ServerController#closeClient(String, int)} to close the
+     * connection.
+     */
+    @Override
+    public void close() {
+        // no-op
+    }
+
+    @Override
+    ModelControllerClient getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    synchronized ModelControllerClient acquire() {
+        active.incrementAndGet();
+        lastUsed = System.currentTimeMillis();
+        if (delegate == null) {
+            delegate = createDelegate();
+        }
+        return delegate;
+    }
+
+    @Override
+    void release() {
+        lastUsed = System.currentTimeMillis();
+        active.decrementAndGet();
+    }
+
+    @Override
+    ModelNode executed(final long start, final ModelNode result) {
+        connected = true;
+        return super.executed(start, result);
+    }
+
+    @Override
+    void failed() {
+        super.failed();
+        // Only attempt to reconnect in the background if the client has successfully connected before
+        if (connected) {
+            connected = false;
+            controller.scheduleReconnect(this);
+        }
+    }
+
+    /**
+     * Executes a lightweight operation to check the connection is usable. The operation works on both standalone
+     * servers and domain controllers, any response, even a failed outcome, means the connection is usable.
+     *
+     * @return {@code true} if the connection is usable, otherwise {@code false}
+     */
+    boolean ping() {
+        final ModelControllerClient current = delegate;
+        try {
+            connected = current != null && isResponse(current.execute(ServerOperations.READ_LAUNCH_TYPE_OP));
+        } catch (IOException e) {
+            connected = false;
+        }
+        return connected;
+    }
+
+    /**
+     * Creates a new connection and replaces the current connection if the new connection could be established. When
+     * invoked from the background thread only the recorded answers are used to authenticate, the user is never
+     * prompted.
+     *
+     * @return {@code true} if the connection was re-established, otherwise {@code false}
+     */
+    boolean reconnect() {
+        final ModelControllerClient newDelegate = createDelegate();
+        try {
+            if (isResponse(newDelegate.execute(ServerOperations.READ_LAUNCH_TYPE_OP))) {
+                final ModelControllerClient old;
+                synchronized (this) {
+                    old = delegate;
+                    delegate = newDelegate;
+                    connected = true;
+                }
+                Streams.safeClose(old);
+                Metrics.INSTANCE.increment(Metrics.RECONNECTS);
+                return true;
+            }
+        } catch (IOException ignore) {
+            // no-op
+        }
+        Streams.safeClose(newDelegate);
+        return false;
+    }
+
+    /**
+     * Closes the underlying connection if no operation is executing on it and it has not been used within the
+     * timeout. The next operation executed opens a new connection.
+     *
+     * @param timeout the number of milliseconds the connection must have been unused for
+     *
+     * @return {@code true} if the connection was closed, otherwise {@code false}
+     */
+    synchronized boolean closeIfIdle(final long timeout) {
+        if (delegate != null && active.get() == 0 && System.currentTimeMillis() - lastUsed > timeout) {
+            closeConnection();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Closes the underlying connection. The next operation executed opens a new connection.
+     */
+    synchronized void closeConnection() {
+        connected = false;
+        Streams.safeClose(delegate);
+        delegate = null;
+    }
+
+    /**
+     * Indicates whether or not the last operation executed on the connection was successful.
+     *
+     * @return {@code true} if the connection has been successfully used
+     */
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Indicates whether or not the client has an underlying connection, either established or being established.
+     *
+     * @return {@code true} if the client has a connection, otherwise {@code false}
+     */
+    boolean isOpen() {
+        return delegate != null;
+    }
+
+    AtomicBoolean reconnecting() {
+        return reconnecting;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%d", address.getHostName(), port);
+    }
+
+    private static boolean isResponse(final ModelNode result) {
+        return result.hasDefined(ClientConstants.OUTCOME);
+    }
+
+    private ModelControllerClient createDelegate() {
+        return ModelControllerClient.Factory.create(address, port, new Authenticator());
+    }
+
+    /**
+     * Answers the callbacks with the answers recorded from the callback handler of the caller. If an answer has not
+     * been recorded the callback handler of the caller is used and its answers are recorded, unless invoked from the
+     * background thread of the {@link ServerController} in which case the callbacks are rejected.
+     */
+    private class Authenticator implements CallbackHandler {
+
+        @Override
+        public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+            if (replay(callbacks)) {
+                return;
+            }
+            if (ServerController.isMonitorThread()) {
+                throw new UnsupportedCallbackException(callbacks[0]);
+            }
+            callbackHandler.handle(callbacks);
+            for (Callback current : callbacks) {
+                if (current instanceof NameCallback) {
+                    username = ((NameCallback) current).getName();
+                } else if (current instanceof PasswordCallback) {
+                    password = ((PasswordCallback) current).getPassword();
+                } else if (current instanceof RealmCallback) {
+                    realm = ((RealmCallback) current).getText();
+                }
+            }
+        }
+
+        private boolean replay(final Callback[] callbacks) {
+            for (Callback current : callbacks) {
+                if (current instanceof NameCallback && username != null) {
+                    ((NameCallback) current).setName(username);
+                } else if (current instanceof PasswordCallback && password != null) {
+                    ((PasswordCallback) current).setPassword(password);
+                } else if (current instanceof RealmCallback && realm != null) {
+                    ((RealmCallback) current).setText(realm);
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Releases the client when an asynchronous operation has completed.
+     */
+    private class ReleaseListener extends AsyncFuture.AbstractListener<ModelNode, Void> {
+
+        @Override
+        public void handleDone(final AsyncFuture<? extends ModelNode> future, final Void attachment) {
+            release();
+        }
+    }
+}
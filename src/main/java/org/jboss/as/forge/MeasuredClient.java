@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge;
+
+import java.io.IOException;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.Operation;
+import org.jboss.as.controller.client.OperationMessageHandler;
+import org.jboss.as.forge.server.Metrics;
+import org.jboss.dmr.ModelNode;
+import org.jboss.threads.AsyncFuture;
+
+/**
+ * A client which records the round trip of each synchronous management operation in the {@link Metrics#MANAGEMENT}
+ * histogram. Asynchronous operations are not recorded as they are measured by the caller, e.g. a deployment.
+ * <p/>
+ * Subclasses can change the client operations are executed on by overriding {@link #acquire()} and are notified when
+ * the operation has completed, see {@link ManagedClient}.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+class MeasuredClient implements ModelControllerClient {
+
+    private final ModelControllerClient delegate;
+
+    MeasuredClient(final ModelControllerClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ModelNode execute(final ModelNode operation) throws IOException {
+        final ModelControllerClient client = acquire();
+        final long start = System.nanoTime();
+        try {
+            return executed(start, client.execute(operation));
+        } catch (IOException e) {
+            failed();
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public ModelNode execute(final Operation operation) throws IOException {
+        final ModelControllerClient client = acquire();
+        final long start = System.nanoTime();
+        try {
+            return executed(start, client.execute(operation));
+        } catch (IOException e) {
+            failed();
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public ModelNode execute(final ModelNode operation, final OperationMessageHandler messageHandler) throws IOException {
+        final ModelControllerClient client = acquire();
+        final long start = System.nanoTime();
+        try {
+            return executed(start, client.execute(operation, messageHandler));
+        } catch (IOException e) {
+            failed();
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public ModelNode execute(final Operation operation, final OperationMessageHandler messageHandler) throws IOException {
+        final ModelControllerClient client = acquire();
+        final long start = System.nanoTime();
+        try {
+            return executed(start, client.execute(operation, messageHandler));
+        } catch (IOException e) {
+            failed();
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public AsyncFuture<ModelNode> executeAsync(final ModelNode operation, final OperationMessageHandler messageHandler) {
+        return delegate.executeAsync(operation, messageHandler);
+    }
+
+    @Override
+    public AsyncFuture<ModelNode> executeAsync(final Operation operation, final OperationMessageHandler messageHandler) {
+        return delegate.executeAsync(operation, messageHandler);
+    }
+
+    /**
+     * Does nothing as the client of the started server is shared, the server closes the client when it is stopped.
+     */
+    @Override
+    public void close() {
+        // no-op
+    }
+
+    /**
+     * Returns the wrapped client.
+     *
+     * @return the wrapped client
+     */
+    ModelControllerClient getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the client the next synchronous operation is executed on. Every invocation is followed by an invocation
+     * of {@link #release()} once the operation has completed.
+     *
+     * @return the client to execute the operation on
+     */
+    ModelControllerClient acquire() {
+        return delegate;
+    }
+
+    /**
+     * Invoked when an operation executed on the client returned by {@link #acquire()} has completed.
+     */
+    void release() {
+        // no-op
+    }
+
+    /**
+     * Invoked when a synchronous operation completed and returned a result.
+     *
+     * @param start  the time in nanoseconds the operation was started
+     * @param result the result of the operation
+     *
+     * @return the result
+     */
+    ModelNode executed(final long start, final ModelNode result) {
+        Metrics.INSTANCE.record(Metrics.MANAGEMENT, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Invoked when a synchronous operation failed to execute.
+     */
+    void failed() {
+        Metrics.INSTANCE.recordFailure(Metrics.MANAGEMENT);
+    }
+}
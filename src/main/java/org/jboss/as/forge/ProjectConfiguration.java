@@ -23,10 +23,19 @@
 package org.jboss.as.forge;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 
+import org.jboss.as.forge.server.LaunchProfile;
+import org.jboss.as.forge.server.Server;
 import org.jboss.as.forge.util.Files;
 import org.jboss.forge.env.Configuration;
 import org.jboss.forge.env.ConfigurationScope;
@@ -40,27 +49,63 @@ public class ProjectConfiguration {
 
     private static final String AS7 = "as7";
     private static final String BUNDLES_DIR = generateKey(AS7, "bundles-dir");
+    private static final String CLASS_DATA_SHARING = generateKey(AS7, "class-data-sharing");
+    private static final String CONSOLE_COMPRESS = generateKey(AS7, "console-compress");
+    private static final String CONSOLE_SEGMENT_AGE = generateKey(AS7, "console-segment-age");
+    private static final String CONSOLE_SEGMENT_SIZE = generateKey(AS7, "console-segment-size");
+    private static final String CONSOLE_SEGMENTS = generateKey(AS7, "console-segments");
+    private static final String DOMAIN = generateKey(AS7, "domain");
     private static final String HOSTNAME = generateKey(AS7, "hostname");
+    private static final String HOST_CONFIG_FILE = generateKey(AS7, "host-config");
     private static final String JAVA_HOME = generateKey("java-home");
     private static final String JBOSS_HOME = generateKey(AS7, "jboss-home");
     private static final String JBOSS_AS_VERSION = generateKey(AS7, "version");
     private static final String JVM_ARGS = generateKey(AS7, "jvm-args");
     private static final String MODULES_DIR = generateKey(AS7, "modules-dir");
     private static final String PORT = generateKey(AS7, "port");
+    private static final String PROFILE = generateKey(AS7, "profile");
+    private static final String PROFILE_BOOT_TIME = generateKey(AS7, "profile-boot-time");
+    private static final String PROFILE_RSS = generateKey(AS7, "profile-rss");
     private static final String SERVER_CONFIG_FILE = generateKey(AS7, "server-config");
+    private static final String SERVER_GROUPS = generateKey(AS7, "server-groups");
     private static final String SERVER_STARTUP_TIMEOUT = generateKey(AS7, "timeout");
+    private static final String SHUTDOWN_TIMEOUT = generateKey(AS7, "shutdown-timeout");
+    private static final String STANDBY = generateKey(AS7, "standby");
+    private static final String STATE_CACHE_TIMEOUT = generateKey(AS7, "state-cache-timeout");
+    private static final String TARGETS = generateKey(AS7, "targets");
     private static final String BASE = "jboss-as";
 
     private static final String[] KEYS = {
             BUNDLES_DIR,
+            CLASS_DATA_SHARING,
+            CONSOLE_COMPRESS,
+            CONSOLE_SEGMENT_AGE,
+            CONSOLE_SEGMENT_SIZE,
+            CONSOLE_SEGMENTS,
+            DOMAIN,
             HOSTNAME,
+            HOST_CONFIG_FILE,
             JAVA_HOME,
             JBOSS_HOME,
             JBOSS_AS_VERSION,
             JVM_ARGS,
             PORT,
             SERVER_CONFIG_FILE,
+            SERVER_GROUPS,
             SERVER_STARTUP_TIMEOUT,
+            SHUTDOWN_TIMEOUT,
+            STANDBY,
+            STATE_CACHE_TIMEOUT,
+            TARGETS,
+    };
+
+    /**
+     * The prefixes of the keys created for each launch profile
+     */
+    private static final String[] PROFILE_PREFIXES = {
+            PROFILE,
+            PROFILE_BOOT_TIME,
+            PROFILE_RSS,
     };
 
     /**
@@ -80,6 +125,11 @@ public class ProjectConfiguration {
      */
     static final int DEFAULT_PORT = 9999;
 
+    /**
+     * The server group of the default domain configuration
+     */
+    static final String DEFAULT_SERVER_GROUP = "main-server-group";
+
     static {
         // Create a temporary directory
         DEFAULT_JBOSS_HOME = new File(Files.getTempDirectory(), "jboss-as-dist");
@@ -121,6 +171,11 @@ public class ProjectConfiguration {
         for (String key : KEYS) {
             configuration.clearProperty(key);
         }
+        for (String prefix : PROFILE_PREFIXES) {
+            for (String key : getKeys(prefix)) {
+                configuration.clearProperty(key);
+            }
+        }
         hostname = DEFAULT_HOSTNAME;
         port = DEFAULT_PORT;
     }
@@ -242,6 +297,65 @@ public class ProjectConfiguration {
         setProperty(BUNDLES_DIR, bundlesDir.getAbsolutePath(), true);
     }
 
+    /**
+     * Returns the maximum size, in bytes, of a console output segment before the output is rotated to a new segment.
+     * <p/>
+     * A value of 0 disables rotation based on size. The default is 10 MB.
+     *
+     * @return the maximum size of a console segment
+     */
+    public long getConsoleSegmentSize() {
+        return getConfiguration().getLong(CONSOLE_SEGMENT_SIZE, 10L * 1024L * 1024L);
+    }
+
+    protected void setConsoleSegmentSize(final long size) {
+        setProperty(CONSOLE_SEGMENT_SIZE, size, true);
+    }
+
+    /**
+     * Returns the maximum age, in seconds, of a console output segment before the output is rotated to a new segment.
+     * <p/>
+     * A value of 0, the default, disables rotation based on age.
+     *
+     * @return the maximum age of a console segment
+     */
+    public long getConsoleSegmentAge() {
+        return getConfiguration().getLong(CONSOLE_SEGMENT_AGE, 0L);
+    }
+
+    protected void setConsoleSegmentAge(final long age) {
+        setProperty(CONSOLE_SEGMENT_AGE, age, true);
+    }
+
+    /**
+     * Returns the number of console output segments to keep. Once the number is reached the oldest segment is
+     * deleted.
+     * <p/>
+     * A value of 0 keeps all segments. The default is 10.
+     *
+     * @return the number of console segments to keep
+     */
+    public int getConsoleSegments() {
+        return getConfiguration().getInt(CONSOLE_SEGMENTS, 10);
+    }
+
+    protected void setConsoleSegments(final int segments) {
+        setProperty(CONSOLE_SEGMENTS, segments, true);
+    }
+
+    /**
+     * Indicates whether closed console output segments should be compressed with gzip. Defaults to {@code false}.
+     *
+     * @return {@code true} if closed segments should be compressed, otherwise {@code false}
+     */
+    public boolean isConsoleCompress() {
+        return getConfiguration().getBoolean(CONSOLE_COMPRESS, false);
+    }
+
+    protected void setConsoleCompress(final boolean compress) {
+        setProperty(CONSOLE_COMPRESS, compress, true);
+    }
+
     /**
      * Returns an array of the JVM arguments to pass to the Java command when launching the server.
      *
@@ -285,6 +399,49 @@ public class ProjectConfiguration {
         setProperty(SERVER_CONFIG_FILE, path, true);
     }
 
+    /**
+     * Indicates whether the server is a managed domain rather than a standalone server. For a managed domain the
+     * {@link #getServerConfigFile() server configuration file} is the domain configuration file.
+     *
+     * @return {@code true} if the server is a managed domain, otherwise {@code false}
+     */
+    public boolean isDomain() {
+        return getConfiguration().getBoolean(DOMAIN, false);
+    }
+
+    protected void setDomain(final boolean domain) {
+        setProperty(DOMAIN, domain, true);
+    }
+
+    /**
+     * Returns the host configuration file of a managed domain or {@code null} if using the default configuration file.
+     *
+     * @return the host configuration file or {@code null}
+     */
+    public String getHostConfigFile() {
+        return getConfiguration().getString(HOST_CONFIG_FILE, null);
+    }
+
+    protected void setHostConfigFile(final String path) {
+        setProperty(HOST_CONFIG_FILE, path, true);
+    }
+
+    /**
+     * Returns the server groups of a managed domain to deploy to.
+     * <p/>
+     * By default only the {@value #DEFAULT_SERVER_GROUP} is returned.
+     *
+     * @return the server groups
+     */
+    public String[] getServerGroups() {
+        final Configuration configuration = getConfiguration();
+        return configuration.containsKey(SERVER_GROUPS) ? configuration.getStringArray(SERVER_GROUPS) : new String[] {DEFAULT_SERVER_GROUP};
+    }
+
+    protected void setServerGroups(final String[] serverGroups) {
+        setProperty(SERVER_GROUPS, serverGroups, true);
+    }
+
     /**
      * Returns the timeout to wait for the server to successfully start.
      * <p/>
@@ -300,6 +457,223 @@ public class ProjectConfiguration {
         setProperty(SERVER_STARTUP_TIMEOUT, timeout, true);
     }
 
+    /**
+     * Returns the number of seconds to wait for a server started by the plugin to shut down gracefully before the
+     * process is terminated.
+     * <p/>
+     * The default is 10 seconds.
+     *
+     * @return the shutdown timeout
+     */
+    public long getShutdownTimeout() {
+        return getConfiguration().getLong(SHUTDOWN_TIMEOUT, Server.DEFAULT_SHUTDOWN_TIMEOUT);
+    }
+
+    protected void setShutdownTimeout(final long timeout) {
+        setProperty(SHUTDOWN_TIMEOUT, timeout, true);
+    }
+
+    /**
+     * Indicates whether standalone servers boot with a class data sharing archive, see {@link
+     * org.jboss.as.forge.server.ClassDataSharing}. The archive requires a HotSpot JVM of Java 13 or later, which none of
+     * the supported 7.0 and 7.1 servers boot on, so the setting currently has no effect and is not exposed as a
+     * command.
+     *
+     * @return {@code true} if class data sharing is enabled, otherwise {@code false}
+     */
+    public boolean isClassDataSharing() {
+        return getConfiguration().getBoolean(CLASS_DATA_SHARING, false);
+    }
+
+    /**
+     * Indicates whether the start command adopts a booted standby server, and keeps a standby server booted in the
+     * background, rather than booting a new server.
+     *
+     * @return {@code true} if the standby server pool is enabled, otherwise {@code false}
+     */
+    public boolean isStandby() {
+        return getConfiguration().getBoolean(STANDBY, false);
+    }
+
+    protected void setStandby(final boolean standby) {
+        setProperty(STANDBY, standby, true);
+    }
+
+    /**
+     * Returns the time, in milliseconds, a server state read from the server is considered current. Within this time
+     * commands do not read the state from the server.
+     * <p/>
+     * A value of 0 disables caching of the server state. The default is 5000 milliseconds.
+     *
+     * @return the state cache timeout
+     */
+    public long getStateCacheTimeout() {
+        return getConfiguration().getLong(STATE_CACHE_TIMEOUT, 5000L);
+    }
+
+    protected void setStateCacheTimeout(final long timeout) {
+        setProperty(STATE_CACHE_TIMEOUT, timeout, true);
+    }
+
+    /**
+     * Returns the launch profiles, the built-in profiles followed by the profiles added to the project. A profile added
+     * with the name of a built-in profile replaces the built-in profile.
+     *
+     * @return the profiles keyed by name
+     */
+    public Map<String, LaunchProfile> getLaunchProfiles() {
+        final Map<String, LaunchProfile> result = new LinkedHashMap<String, LaunchProfile>(LaunchProfile.getDefaults());
+        final Configuration configuration = getConfiguration();
+        for (String key : getKeys(PROFILE)) {
+            final String name = key.substring(PROFILE.length() + 1);
+            try {
+                result.put(name, LaunchProfile.of(name, Arrays.asList(configuration.getStringArray(key))));
+            } catch (IllegalArgumentException ignore) {
+                // Edited by hand and no longer valid
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the launch profile.
+     *
+     * @param name the name of the profile
+     *
+     * @return the profile or {@code null} if there is no profile with the name
+     */
+    public LaunchProfile getLaunchProfile(final String name) {
+        return getLaunchProfiles().get(name);
+    }
+
+    /**
+     * Adds a launch profile, replacing a profile with the same name. The recorded boot time and resident set size of
+     * the replaced profile are cleared.
+     *
+     * @param profile the profile to add
+     */
+    protected void addLaunchProfile(final LaunchProfile profile) {
+        final List<String> jvmArgs = profile.getJvmArgs();
+        setProperty(PROFILE + "." + profile.getName(), jvmArgs.toArray(new String[jvmArgs.size()]), true);
+        clearLaunchProfileStats(profile.getName());
+    }
+
+    /**
+     * Removes a launch profile added to the project. Removing a profile which replaced a built-in profile restores the
+     * built-in profile.
+     *
+     * @param name the name of the profile
+     *
+     * @return {@code true} if the profile was removed, {@code false} if the project has no profile with the name
+     */
+    protected boolean removeLaunchProfile(final String name) {
+        final String key = PROFILE + "." + name;
+        if (!getConfiguration().containsKey(key)) {
+            return false;
+        }
+        getConfiguration().clearProperty(key);
+        clearLaunchProfileStats(name);
+        return true;
+    }
+
+    /**
+     * Records the boot time and resident set size a launch profile produced.
+     *
+     * @param name     the name of the profile
+     * @param bootTime the boot time in milliseconds
+     * @param rss      the resident set size in bytes or {@code -1} if not known
+     */
+    protected void recordLaunchProfile(final String name, final long bootTime, final long rss) {
+        setProperty(PROFILE_BOOT_TIME + "." + name, bootTime, true);
+        setProperty(PROFILE_RSS + "." + name, (rss < 0L ? null : rss), true);
+    }
+
+    /**
+     * Returns the boot time, in milliseconds, recorded for the last start with the launch profile.
+     *
+     * @param name the name of the profile
+     *
+     * @return the boot time or {@code -1} if no start was recorded
+     */
+    public long getLaunchProfileBootTime(final String name) {
+        return getConfiguration().getLong(PROFILE_BOOT_TIME + "." + name, -1L);
+    }
+
+    /**
+     * Returns the resident set size, in bytes, of the server recorded for the last start with the launch profile.
+     *
+     * @param name the name of the profile
+     *
+     * @return the resident set size or {@code -1} if not known
+     */
+    public long getLaunchProfileRss(final String name) {
+        return getConfiguration().getLong(PROFILE_RSS + "." + name, -1L);
+    }
+
+    private void clearLaunchProfileStats(final String name) {
+        getConfiguration().clearProperty(PROFILE_BOOT_TIME + "." + name);
+        getConfiguration().clearProperty(PROFILE_RSS + "." + name);
+    }
+
+    /**
+     * Returns the named server targets the project can be deployed to, in the order they were added.
+     *
+     * @return the targets keyed by name
+     */
+    public Map<String, ServerTarget> getTargets() {
+        final Configuration configuration = getConfiguration();
+        if (!configuration.containsKey(TARGETS)) {
+            return Collections.emptyMap();
+        }
+        final Map<String, ServerTarget> result = new LinkedHashMap<String, ServerTarget>();
+        for (String value : configuration.getStringArray(TARGETS)) {
+            final ServerTarget target = ServerTarget.parse(value);
+            if (target != null) {
+                result.put(target.getName(), target);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a named server target, replacing a target with the same name.
+     *
+     * @param target the target to add
+     */
+    protected void addTarget(final ServerTarget target) {
+        final Map<String, ServerTarget> targets = new LinkedHashMap<String, ServerTarget>(getTargets());
+        targets.put(target.getName(), target);
+        setTargets(targets);
+    }
+
+    /**
+     * Removes the named server target.
+     *
+     * @param name the name of the target
+     *
+     * @return {@code true} if the target was removed, {@code false} if it did not exist
+     */
+    protected boolean removeTarget(final String name) {
+        final Map<String, ServerTarget> targets = new LinkedHashMap<String, ServerTarget>(getTargets());
+        if (targets.remove(name) == null) {
+            return false;
+        }
+        setTargets(targets);
+        return true;
+    }
+
+    private void setTargets(final Map<String, ServerTarget> targets) {
+        if (targets.isEmpty()) {
+            setProperty(TARGETS, null, true);
+        } else {
+            final List<String> values = new ArrayList<String>(targets.size());
+            for (ServerTarget target : targets.values()) {
+                values.add(target.toProperty());
+            }
+            setProperty(TARGETS, values.toArray(new String[values.size()]), true);
+        }
+    }
+
     /**
      * The version of the JBoss Application Server to use.
      * <p/>
@@ -359,6 +733,19 @@ public class ProjectConfiguration {
         return configuration.containsKey(key) ? new File(configuration.getString(key)) : null;
     }
 
+    private List<String> getKeys(final String prefix) {
+        final List<String> result = new ArrayList<String>();
+        final Iterator<?> keys = getConfiguration().getKeys(prefix);
+        while (keys.hasNext()) {
+            final String key = String.valueOf(keys.next());
+            // Only keys for a name directly below the prefix
+            if (key.length() > prefix.length() + 1 && key.charAt(prefix.length()) == '.') {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
     private Configuration getConfiguration() {
         return configuration.getScopedConfiguration(ConfigurationScope.PROJECT);
     }
@@ -25,78 +25,468 @@ package org.jboss.as.forge;
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jboss.as.forge.util.Streams;
 
 /**
+ * Writes the console output to temporary files.
+ * <p/>
+ * The output is written to segments. When a segment reaches the maximum size or age a new segment is started at the
+ * next line boundary and the oldest segments are removed once the maximum number of segments has been reached. Closed
+ * segments can optionally be compressed.
+ * <p/>
+ * A sparse index of line offsets is kept as the bytes are written which allows the last lines to be read without
+ * reading all the segments.
+ * <p/>
+ * The segments are deleted when the wrapper is closed. Wrappers still open when the JVM exits are closed by a single
+ * shutdown hook.
+ *
  * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
  */
 class ServerConsoleWrapper extends OutputStream implements Closeable {
 
-    private final File file;
-    private final FileOutputStream out;
+    /**
+     * The number of lines between each entry in the index.
+     */
+    private static final int INDEX_INTERVAL = 128;
+
+    /**
+     * The number of lines kept in memory for following the console.
+     */
+    private static final int BUFFER_LINES = 2000;
+
+    /**
+     * Lines longer than this are truncated in the in-memory buffer, the segments always contain the full line.
+     */
+    private static final int MAX_BUFFER_LINE_LENGTH = 16384;
+
+    // Guarded by itself
+    private static final Set<ServerConsoleWrapper> OPEN = new HashSet<ServerConsoleWrapper>();
+
+    static {
+        // Setup a shutdown hook to delete the segments of the wrappers which were not closed
+        SecurityActions.addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                final List<ServerConsoleWrapper> open;
+                synchronized (OPEN) {
+                    open = new ArrayList<ServerConsoleWrapper>(OPEN);
+                }
+                for (ServerConsoleWrapper wrapper : open) {
+                    Streams.safeClose(wrapper);
+                }
+            }
+        });
+    }
+
+    /**
+     * Handles lines read from the console.
+     */
+    interface LineHandler {
+
+        /**
+         * Handles a line from the console.
+         *
+         * @param line the line
+         */
+        void handle(String line);
+    }
+
+    private final long maxSegmentSize;
+    private final int maxSegments;
+    private final long maxSegmentAge;
+    private final boolean compress;
 
+    private final ConsoleBuffer buffer;
+
+    // Guarded by this
+    private final LinkedList<Segment> segments;
+    private Segment current;
+    private byte[] lineBytes;
+    private int lineLength;
+
+    /**
+     * Creates a console wrapper that writes to a single, unbounded file.
+     *
+     * @throws IOException if the file could not be created
+     */
     public ServerConsoleWrapper() throws IOException {
+        this(0L, 0, 0L, false);
+    }
+
+    /**
+     * Creates a console wrapper that rotates the output.
+     *
+     * @param maxSegmentSize the maximum size, in bytes, of a segment or 0 for no size limit
+     * @param maxSegments    the maximum number of segments to keep or 0 to keep all segments
+     * @param maxSegmentAge  the maximum age, in milliseconds, of a segment or 0 for no age limit
+     * @param compress       {@code true} if closed segments should be compressed
+     *
+     * @throws IOException if the first segment could not be created
+     */
+    public ServerConsoleWrapper(final long maxSegmentSize, final int maxSegments, final long maxSegmentAge, final boolean compress) throws IOException {
         super();
-        file = File.createTempFile("jboss-console", ".log");
-        file.deleteOnExit();
-        out = new FileOutputStream(file);
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxSegments = maxSegments;
+        this.maxSegmentAge = maxSegmentAge;
+        this.compress = compress;
+        buffer = new ConsoleBuffer(BUFFER_LINES);
+        segments = new LinkedList<Segment>();
+        current = new Segment();
+        segments.add(current);
+        lineBytes = new byte[256];
+        lineLength = 0;
+        synchronized (OPEN) {
+            OPEN.add(this);
+        }
+    }
+
+    /**
+     * Returns the in-memory buffer of the most recent lines which can be used to follow the console.
+     *
+     * @return the buffer
+     */
+    ConsoleBuffer getBuffer() {
+        return buffer;
     }
 
-    public List<String> readAllLines() throws IOException {
-        final List<String> result = new ArrayList<String>();
-        final BufferedReader reader = new BufferedReader(new FileReader(file));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            result.add(line);
+    /**
+     * Reads all the lines from the console passing each line to the handler. The lines are streamed from the segments
+     * and not held in memory.
+     *
+     * @param handler the handler to process each line
+     *
+     * @return the number of lines read
+     *
+     * @throws IOException if an error occurs reading the segments
+     */
+    public int readAllLines(final LineHandler handler) throws IOException {
+        int count = 0;
+        for (Segment segment : snapshot()) {
+            final BufferedReader reader = segment.createReader(0L);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    handler.handle(line);
+                    count++;
+                }
+            } finally {
+                Streams.safeClose(reader);
+            }
         }
-        return Collections.unmodifiableList(result);
+        return count;
     }
 
+    /**
+     * Reads the last lines from the console. Only the segments containing the lines are read and the index is used to
+     * seek close to the first line to be returned.
+     *
+     * @param numberOfLines the number of lines to read
+     *
+     * @return the last lines of the console
+     *
+     * @throws IOException if an error occurs reading the segments
+     */
     public List<String> readLines(final int numberOfLines) throws IOException {
-        final List<String> result = new ArrayList<String>();
-        final BufferedReader reader = new BufferedReader(new FileReader(file));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            result.add(line);
+        if (numberOfLines <= 0) {
+            return Collections.emptyList();
         }
-        final int end = result.size();
-        final int start = end - numberOfLines;
-        if (start > 0) {
-            return Collections.unmodifiableList(result.subList(start, result.size()));
-        } else {
-            return Collections.unmodifiableList(result);
+        final List<Segment> segments = snapshot();
+        // Find the segment containing the first line to be read
+        int startSegment = 0;
+        long offset = 0L;
+        long remaining = numberOfLines;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            final Segment segment = segments.get(i);
+            final long lineCount = segment.getLineCount();
+            if (lineCount >= remaining) {
+                startSegment = i;
+                offset = segment.getOffset(lineCount - remaining);
+                break;
+            }
+            remaining -= lineCount;
         }
+        final Deque<String> result = new ArrayDeque<String>(numberOfLines);
+        for (int i = startSegment; i < segments.size(); i++) {
+            final BufferedReader reader = segments.get(i).createReader(i == startSegment ? offset : 0L);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (result.size() == numberOfLines) {
+                        result.removeFirst();
+                    }
+                    result.addLast(line);
+                }
+            } finally {
+                Streams.safeClose(reader);
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<String>(result));
     }
 
     @Override
-    public void write(final int b) throws IOException {
-        out.write(b);
+    public synchronized void write(final int b) throws IOException {
+        current.out.write(b);
+        if (appendLine((byte) b, current.update((byte) b))) {
+            checkRotate();
+        }
     }
 
     @Override
     public void write(final byte[] b) throws IOException {
-        out.write(b);
+        write(b, 0, b.length);
     }
 
     @Override
-    public void write(final byte[] b, final int off, final int len) throws IOException {
-        out.write(b, off, len);
+    public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+        int start = off;
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            // Rotation only happens at the end of a line so lines are not split across segments
+            if (appendLine(b[i], current.update(b[i])) && shouldRotate()) {
+                current.out.write(b, start, i + 1 - start);
+                start = i + 1;
+                rotate();
+            }
+        }
+        if (start < end) {
+            current.out.write(b, start, end - start);
+        }
     }
 
     @Override
-    public void flush() throws IOException {
-        out.flush();
+    public synchronized void flush() throws IOException {
+        current.out.flush();
     }
 
     @Override
-    public void close() throws IOException {
-        out.close();
-        file.delete();
+    public synchronized void close() throws IOException {
+        synchronized (OPEN) {
+            OPEN.remove(this);
+        }
+        buffer.close();
+        try {
+            current.out.close();
+        } finally {
+            for (Segment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+        }
+    }
+
+    private synchronized List<Segment> snapshot() {
+        return new ArrayList<Segment>(segments);
+    }
+
+    /**
+     * Appends the byte to the current line. If the byte completed the line the line is added to the in-memory buffer.
+     *
+     * @param b   the byte
+     * @param eol {@code true} if the byte is the end of the line
+     *
+     * @return the {@code eol} parameter
+     */
+    private boolean appendLine(final byte b, final boolean eol) {
+        if (eol) {
+            int len = lineLength;
+            if (len > 0 && lineBytes[len - 1] == '\r') {
+                len--;
+            }
+            buffer.add(new String(lineBytes, 0, len));
+            lineLength = 0;
+        } else if (lineLength < MAX_BUFFER_LINE_LENGTH) {
+            if (lineLength == lineBytes.length) {
+                final byte[] newBytes = new byte[lineBytes.length * 2];
+                System.arraycopy(lineBytes, 0, newBytes, 0, lineLength);
+                lineBytes = newBytes;
+            }
+            lineBytes[lineLength++] = b;
+        }
+        return eol;
+    }
+
+    private void checkRotate() throws IOException {
+        if (shouldRotate()) {
+            rotate();
+        }
+    }
+
+    private boolean shouldRotate() {
+        return (maxSegmentSize > 0L && current.size >= maxSegmentSize) ||
+                (maxSegmentAge > 0L && System.currentTimeMillis() - current.created >= maxSegmentAge);
+    }
+
+    private void rotate() throws IOException {
+        final Segment closed = current;
+        closed.out.close();
+        current = new Segment();
+        segments.add(current);
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            segments.removeFirst().delete();
+        }
+        if (compress && segments.contains(closed)) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    closed.compress();
+                }
+            }, "AS7-Console-Compress");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * A single file the console output is written to.
+     */
+    private static class Segment {
+        final File file;
+        final FileOutputStream out;
+        final long created;
+        // Guarded by the ServerConsoleWrapper
+        long size;
+        private long[] index;
+        private int indexSize;
+        private volatile long lineCount;
+        private volatile File compressedFile;
+        private volatile boolean deleted;
+
+        Segment() throws IOException {
+            file = File.createTempFile("jboss-console", ".log");
+            out = new FileOutputStream(file);
+            created = System.currentTimeMillis();
+            size = 0L;
+            index = new long[16];
+            // The first line always starts at the beginning of the file
+            index[0] = 0L;
+            indexSize = 1;
+            lineCount = 0L;
+        }
+
+        /**
+         * Updates the size and index for the byte written.
+         *
+         * @param b the byte written
+         *
+         * @return {@code true} if the byte completed a line
+         */
+        boolean update(final byte b) {
+            size++;
+            if (b == '\n') {
+                lineCount++;
+                if (lineCount % INDEX_INTERVAL == 0) {
+                    synchronized (this) {
+                        if (indexSize == index.length) {
+                            final long[] newIndex = new long[index.length * 2];
+                            System.arraycopy(index, 0, newIndex, 0, indexSize);
+                            index = newIndex;
+                        }
+                        // The next line starts at the current size
+                        index[indexSize++] = size;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        long getLineCount() {
+            return lineCount;
+        }
+
+        /**
+         * Returns the offset of an indexed line at or before the line.
+         *
+         * @param line the line number
+         *
+         * @return the offset to start reading from
+         */
+        synchronized long getOffset(final long line) {
+            return index[(int) (line / INDEX_INTERVAL)];
+        }
+
+        BufferedReader createReader(final long offset) throws IOException {
+            final InputStream in = open(offset);
+            return new BufferedReader(new InputStreamReader(in));
+        }
+
+        void compress() {
+            final File target = new File(file.getAbsolutePath() + ".gz");
+            FileInputStream in = null;
+            GZIPOutputStream out = null;
+            try {
+                in = new FileInputStream(file);
+                out = new GZIPOutputStream(new FileOutputStream(target), 8192);
+                final byte[] buffer = new byte[8192];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+                out.finish();
+            } catch (IOException e) {
+                // Leave the segment uncompressed
+                Streams.safeClose(out);
+                target.delete();
+                return;
+            } finally {
+                Streams.safeClose(in);
+                Streams.safeClose(out);
+            }
+            compressedFile = target;
+            file.delete();
+            if (deleted) {
+                target.delete();
+            }
+        }
+
+        void delete() {
+            deleted = true;
+            Streams.safeClose(out);
+            file.delete();
+            final File compressedFile = this.compressedFile;
+            if (compressedFile != null) {
+                compressedFile.delete();
+            }
+        }
+
+        private InputStream open(final long offset) throws IOException {
+            if (compressedFile == null) {
+                try {
+                    final FileInputStream in = new FileInputStream(file);
+                    try {
+                        in.getChannel().position(offset);
+                    } catch (IOException e) {
+                        Streams.safeClose(in);
+                        throw e;
+                    }
+                    return in;
+                } catch (FileNotFoundException e) {
+                    // The segment may have been compressed while opening
+                    if (compressedFile == null) {
+                        throw e;
+                    }
+                }
+            }
+            // Compressed segments cannot seek, but the caller discards any extra lines
+            return new GZIPInputStream(new FileInputStream(compressedFile));
+        }
     }
 }
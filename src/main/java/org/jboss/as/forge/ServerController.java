@@ -22,42 +22,123 @@
 
 package org.jboss.as.forge;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.PreDestroy;
 import javax.inject.Singleton;
+import javax.security.auth.callback.CallbackHandler;
 
 import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.forge.server.Metrics;
 import org.jboss.as.forge.server.Server;
+import org.jboss.as.forge.server.ShutdownReport;
 import org.jboss.as.forge.util.Messages;
-import org.jboss.as.forge.util.Streams;
 
 /**
- * This class is not thread-safe.
+ * Manages the server started by the plugin and the management clients used to connect to servers.
+ * <p/>
+ * Clients are kept open and shared, keyed by the host, port and callback handler, so the connection and
+ * authentication costs are only paid once and a client authenticated by one callback handler is never used by another.
+ * The remoting based clients multiplex requests over a single channel and are safe for concurrent use. Idle clients
+ * are periodically checked in the background and re-connected with a back off if the connection was lost.
+ * The round trip of each synchronous operation executed with a client is recorded in the {@link Metrics}.
  *
  * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
  */
 @Singleton
 public class ServerController {
 
-    private ModelControllerClient client;
+    private static final long HEALTH_CHECK_INTERVAL = 30L;
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(10L);
+    private static final long INITIAL_RECONNECT_DELAY = 250L;
+    private static final long MAX_RECONNECT_DELAY = TimeUnit.SECONDS.toMillis(30L);
+    private static final String MONITOR_THREAD_NAME = "AS7-Client-Monitor";
 
-    private Server server;
+    private final ConcurrentMap<ClientKey, ManagedClient> clients = new ConcurrentHashMap<ClientKey, ManagedClient>();
+
+    private ScheduledExecutorService executor;
+
+    private volatile Server server;
+    private volatile MeasuredClient serverClient;
 
     @PreDestroy
     protected void cleanUp() {
         shutdownServer();
         closeClient();
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
     }
 
     /**
-     * If a server has been set then the client associated with the server is returned. If a server has not been set
-     * and  a client has been set, then the client is returned. If neither a server or client have been set {@code
-     * null} is returned.
+     * If a server has been set then the client associated with the server is returned. Otherwise a shared client
+     * connected to the host and port is returned, creating the client if required.
+     * <p/>
+     * The client returned is owned by this controller and should not be closed.
+     *
+     * @param hostname        the host name of the management interface
+     * @param port            the port of the management interface
+     * @param callbackHandler the callback handler used if a new connection needs to be authenticated
+     *
+     * @return the client
      *
-     * @return a client or {@code null} if no client or server is set
+     * @throws UnknownHostException if the host name could not be resolved
      */
-    public ModelControllerClient getClient() {
+    public ModelControllerClient getClient(final String hostname, final int port, final CallbackHandler callbackHandler) throws UnknownHostException {
+        final Server server = this.server;
         if (server != null) {
-            return server.getClient();
+            final ModelControllerClient client = server.getClient();
+            if (client == null) {
+                return null;
+            }
+            // Only wrap the client of the server once
+            MeasuredClient result = serverClient;
+            if (result == null || result.getDelegate() != client) {
+                result = new MeasuredClient(client);
+                serverClient = result;
+            }
+            return result;
+        }
+        return getSharedClient(hostname, port, callbackHandler);
+    }
+
+    /**
+     * Returns a shared client connected to the host and port and authenticated by the callback handler, creating the
+     * client if required. Unlike {@link #getClient(String, int, CallbackHandler)} the client of a server that has been
+     * set is never returned, use this to connect to a server other than the one started by the plugin.
+     * <p/>
+     * The client returned is owned by this controller and should not be closed.
+     *
+     * @param hostname        the host name of the management interface
+     * @param port            the port of the management interface
+     * @param callbackHandler the callback handler used if a new connection needs to be authenticated
+     *
+     * @return the client
+     *
+     * @throws UnknownHostException if the host name could not be resolved
+     */
+    public ModelControllerClient getSharedClient(final String hostname, final int port, final CallbackHandler callbackHandler) throws UnknownHostException {
+        final ClientKey key = new ClientKey(hostname, port, callbackHandler);
+        ManagedClient client = clients.get(key);
+        if (client == null) {
+            // The connection is only opened when the client is first used
+            final ManagedClient newClient = new ManagedClient(this, InetAddress.getByName(hostname), port, callbackHandler);
+            client = clients.putIfAbsent(key, newClient);
+            if (client == null) {
+                client = newClient;
+                startHealthCheck();
+            }
         }
         return client;
     }
@@ -68,31 +149,36 @@ public class ServerController {
      * @return {@code true} if a client is available, otherwise {@code false}
      */
     public boolean hasClient() {
-        return server != null || client != null;
+        return server != null || !clients.isEmpty();
     }
 
     /**
-     * Sets the client to be used.
-     *
-     * @param client the client to use
-     *
-     * @throws IllegalStateException if a client or server is currently set
+     * Closes all clients not attached to a server. If a server is set the client for the server is not closed and
+     * {@link #hasClient()} will continue to return {@code true}.
      */
-    public void setClient(final ModelControllerClient client) {
-        // Don't allow a server to be set if current is not null
-        if (client != null && hasClient()) {
-            throw new IllegalStateException(Messages.INSTANCE.getMessage("server.client.already.connected"));
+    public void closeClient() {
+        final Iterator<ManagedClient> iter = clients.values().iterator();
+        while (iter.hasNext()) {
+            iter.next().closeConnection();
+            iter.remove();
         }
-        this.client = client;
     }
 
     /**
-     * Closes the client if it's not attached to a server. If the client is attached to a server the close is ignored
-     * and {@link #hasClient()} will continue to return {@code true}.
+     * Closes the clients connected to the host and port if any exist.
+     *
+     * @param hostname the host name of the management interface
+     * @param port     the port of the management interface
      */
-    public void closeClient() {
-        Streams.safeClose(client);
-        client = null;
+    public void closeClient(final String hostname, final int port) {
+        final Iterator<Map.Entry<ClientKey, ManagedClient>> iter = clients.entrySet().iterator();
+        while (iter.hasNext()) {
+            final Map.Entry<ClientKey, ManagedClient> entry = iter.next();
+            if (entry.getKey().matches(hostname, port)) {
+                entry.getValue().closeConnection();
+                iter.remove();
+            }
+        }
     }
 
     /**
@@ -120,23 +206,165 @@ public class ServerController {
      *
      * @throws IllegalStateException if a server has already be set
      */
-    public void setServer(final Server server) {
+    public synchronized void setServer(final Server server) {
         // Don't allow a server to be set if current is not null
         if (server != null && hasServer()) {
             throw new IllegalStateException(Messages.INSTANCE.getMessage("server.already.connected"));
         }
-        // Check for a previous management client
-        Streams.safeClose(client);
+        // Check for previous management clients
+        closeClient();
         this.server = server;
+        serverClient = null;
     }
 
     /**
      * Shuts down the running server. If the server is not running the shutdown is quietly ignored.
+     *
+     * @return the stages executed to stop the server or {@code null} if no server was set
+     */
+    public ShutdownReport shutdownServer() {
+        return shutdownServer(Server.DEFAULT_SHUTDOWN_TIMEOUT);
+    }
+
+    /**
+     * Shuts down the running server. If the server does not shut down within the timeout the process is terminated.
+     * If the server is not running the shutdown is quietly ignored.
+     *
+     * @param timeout the number of seconds to wait for the server to shut down gracefully
+     *
+     * @return the stages executed to stop the server or {@code null} if no server was set
+     *
+     * @see Server#stop(long)
      */
-    public void shutdownServer() {
+    public synchronized ShutdownReport shutdownServer(final long timeout) {
+        ShutdownReport result = null;
         if (server != null) {
-            server.stop();
+            result = server.stop(timeout);
             server = null;
+            serverClient = null;
+        }
+        return result;
+    }
+
+    /**
+     * Schedules a background re-connect of the client. Subsequent requests are ignored until the client has been
+     * reconnected.
+     *
+     * @param client the client to reconnect
+     */
+    void scheduleReconnect(final ManagedClient client) {
+        if (client.reconnecting().compareAndSet(false, true)) {
+            schedule(new Reconnect(client, INITIAL_RECONNECT_DELAY), INITIAL_RECONNECT_DELAY);
+        }
+    }
+
+    /**
+     * Checks whether the current thread is the background thread which checks and re-connects the clients.
+     *
+     * @return {@code true} if invoked from the background thread, otherwise {@code false}
+     */
+    static boolean isMonitorThread() {
+        return MONITOR_THREAD_NAME.equals(Thread.currentThread().getName());
+    }
+
+    private synchronized void startHealthCheck() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, MONITOR_THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.scheduleWithFixedDelay(new HealthCheck(), HEALTH_CHECK_INTERVAL, HEALTH_CHECK_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    private synchronized void schedule(final Runnable task, final long delay) {
+        if (executor != null) {
+            executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The key of a shared client. Callback handlers are compared by identity as they are not expected to implement
+     * equality.
+     */
+    private static final class ClientKey {
+        private final String hostname;
+        private final int port;
+        private final CallbackHandler callbackHandler;
+
+        ClientKey(final String hostname, final int port, final CallbackHandler callbackHandler) {
+            this.hostname = hostname;
+            this.port = port;
+            this.callbackHandler = callbackHandler;
+        }
+
+        boolean matches(final String hostname, final int port) {
+            return this.hostname.equals(hostname) && this.port == port;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 17;
+            hash = 31 * hash + hostname.hashCode();
+            hash = 31 * hash + port;
+            hash = 31 * hash + System.identityHashCode(callbackHandler);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof ClientKey)) {
+                return false;
+            }
+            final ClientKey other = (ClientKey) obj;
+            return matches(other.hostname, other.port) && callbackHandler == other.callbackHandler;
+        }
+    }
+
+    /**
+     * Closes the connection of idle clients and checks the connection of any connected clients. Clients are not
+     * removed as callers may still hold them, a client opens a new connection when it's used again.
+     */
+    private class HealthCheck implements Runnable {
+
+        @Override
+        public void run() {
+            for (ManagedClient client : clients.values()) {
+                if (!client.closeIfIdle(IDLE_TIMEOUT) && client.isConnected() && !client.reconnecting().get() && !client.ping()) {
+                    scheduleReconnect(client);
+                }
+            }
+        }
+    }
+
+    /**
+     * Attempts to reconnect a client doubling the delay between each failed attempt.
+     */
+    private class Reconnect implements Runnable {
+        private final ManagedClient client;
+        private final long delay;
+
+        Reconnect(final ManagedClient client, final long delay) {
+            this.client = client;
+            this.delay = delay;
+        }
+
+        @Override
+        public void run() {
+            // The client may have been closed while waiting
+            if (!client.isOpen() || client.reconnect()) {
+                client.reconnecting().set(false);
+            } else {
+                final long nextDelay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+                schedule(new Reconnect(client, nextDelay), nextDelay);
+            }
         }
     }
 }
@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Singleton;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.forge.server.Server.State;
+import org.jboss.as.forge.server.ServerOperations;
+import org.jboss.as.forge.server.deployment.Deployment.Status;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Caches the state of servers, keyed by the host and port of the management interface, to avoid reading the server
+ * state before and after each command.
+ * <p/>
+ * Mutating operations should update the tracker with the state reported by the operation rather than invalidating it,
+ * so the next read of the state does not require another round trip.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@Singleton
+public class ServerStateTracker {
+
+    private static final String DOMAIN = "DOMAIN";
+    private static final String PROCESS_STATE = "process-state";
+    private static final String RESPONSE_HEADERS = "response-headers";
+
+    private final ConcurrentMap<String, CachedState> states = new ConcurrentHashMap<String, CachedState>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the state of the server. If the cached state is older than the {@code ttl} the state is read from the
+     * server.
+     *
+     * @param hostname the host name of the management interface
+     * @param port     the port of the management interface
+     * @param client   the client used if the state needs to be read
+     * @param ttl      the time, in milliseconds, a cached state is valid for
+     *
+     * @return the state of the server
+     */
+    public State getState(final String hostname, final int port, final ModelControllerClient client, final long ttl) {
+        final CachedState cached = states.get(createKey(hostname, port));
+        if (cached != null && System.currentTimeMillis() - cached.timestamp < ttl) {
+            hits.incrementAndGet();
+            return cached.state;
+        }
+        misses.incrementAndGet();
+        return readState(hostname, port, client);
+    }
+
+    /**
+     * Reads the state of the server and updates the cached state.
+     *
+     * @param hostname the host name of the management interface
+     * @param port     the port of the management interface
+     * @param client   the client used to read the state
+     *
+     * @return the state of the server
+     */
+    public State readState(final String hostname, final int port, final ModelControllerClient client) {
+        State result = State.SHUTDOWN;
+        try {
+            final ModelNode response = client.execute(ServerOperations.READ_STATE_OP);
+            if (ServerOperations.isSuccessfulOutcome(response)) {
+                result = State.fromModel(ServerOperations.readResult(response));
+            } else if (DOMAIN.equals(ServerOperations.readResultAsString(client.execute(ServerOperations.READ_LAUNCH_TYPE_OP)))) {
+                // A domain controller accepting operations is running
+                result = State.RUNNING;
+            }
+        } catch (IOException ignore) {
+            result = State.UNKNOWN;
+        }
+        // Don't cache unknown states as the server may not be reachable yet
+        if (result == State.UNKNOWN) {
+            invalidate(hostname, port);
+        } else {
+            update(hostname, port, result);
+        }
+        return result;
+    }
+
+    /**
+     * Updates the cached state of the server.
+     *
+     * @param hostname the host name of the management interface
+     * @param port     the port of the management interface
+     * @param state    the new state
+     */
+    public void update(final String hostname, final int port, final State state) {
+        states.put(createKey(hostname, port), new CachedState(state));
+    }
+
+    /**
+     * Updates the cached state based on the result of an operation. If the result contains a {@code process-state}
+     * response header the state is updated to reflect the header. A successful result without the header is only
+     * returned by a running server. A failed result without the header leaves the cached state as is.
+     *
+     * @param hostname the host name of the management interface
+     * @param port     the port of the management interface
+     * @param result   the result of the operation
+     */
+    public void update(final String hostname, final int port, final ModelNode result) {
+        if (result.hasDefined(RESPONSE_HEADERS) && result.get(RESPONSE_HEADERS).hasDefined(PROCESS_STATE)) {
+            update(hostname, port, State.fromModel(result.get(RESPONSE_HEADERS, PROCESS_STATE)));
+        } else if (ServerOperations.isSuccessfulOutcome(result)) {
+            update(hostname, port, State.RUNNING);
+        }
+    }
+
+    /**
+     * Updates the cached state based on the status of a deployment, which reflects the {@code process-state} response
+     * header of the deployment operation where the operation reports it. A deployment which neither requires a reload
+     * nor a restart does not confirm the cached state, the cached state expires as it would without the deployment.
+     *
+     * @param hostname the host name of the management interface
+     * @param port     the port of the management interface
+     * @param status   the status of the deployment
+     */
+    public void update(final String hostname, final int port, final Status status) {
+        if (status == Status.REQUIRES_RELOAD) {
+            update(hostname, port, State.RELOAD_REQUIRED);
+        } else if (status == Status.REQUIRES_RESTART) {
+            update(hostname, port, State.RESTART_REQUIRED);
+        }
+    }
+
+    /**
+     * Removes the cached state for the server forcing the next {@link #getState(String, int, ModelControllerClient,
+     * long)} to read the state from the server.
+     *
+     * @param hostname the host name of the management interface
+     * @param port     the port of the management interface
+     */
+    public void invalidate(final String hostname, final int port) {
+        states.remove(createKey(hostname, port));
+    }
+
+    /**
+     * Returns the number of times the state was returned from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times the state had to be read from the server.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static String createKey(final String hostname, final int port) {
+        return String.format("%s:%d", hostname, port);
+    }
+
+    private static class CachedState {
+        final State state;
+        final long timestamp;
+
+        CachedState(final State state) {
+            this.state = state;
+            timestamp = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge;
+
+import org.jboss.as.forge.util.Messages;
+
+/**
+ * A named server the project can be deployed to, identified by the host name and port of the management interface.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class ServerTarget {
+
+    private final String name;
+    private final String hostname;
+    private final int port;
+
+    private ServerTarget(final String name, final String hostname, final int port) {
+        this.name = name;
+        this.hostname = hostname;
+        this.port = port;
+    }
+
+    /**
+     * Creates a new target.
+     *
+     * @param name     the name of the target
+     * @param hostname the host name of the management interface
+     * @param port     the port of the management interface
+     *
+     * @return the new target
+     */
+    public static ServerTarget of(final String name, final String hostname, final int port) {
+        if (name == null || name.isEmpty() || name.indexOf('=') >= 0 || name.indexOf(',') >= 0) {
+            throw new IllegalArgumentException(Messages.INSTANCE.getMessage("target.invalid.name", name));
+        }
+        return new ServerTarget(name, hostname, port);
+    }
+
+    /**
+     * Parses a target in the {@code name=hostname:port} format used to store targets.
+     *
+     * @param value the value to parse
+     *
+     * @return the target or {@code null} if the value is not a valid target
+     */
+    static ServerTarget parse(final String value) {
+        final int eq = value.indexOf('=');
+        final int colon = value.lastIndexOf(':');
+        if (eq <= 0 || colon <= eq + 1 || colon == value.length() - 1) {
+            return null;
+        }
+        try {
+            return new ServerTarget(value.substring(0, eq).trim(), value.substring(eq + 1, colon).trim(), Integer.parseInt(value.substring(colon + 1).trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the name of the target.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the host name of the management interface.
+     *
+     * @return the host name
+     */
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * Returns the port of the management interface.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the target in the format used to store targets.
+     *
+     * @return the target as {@code name=hostname:port}
+     */
+    String toProperty() {
+        return name + "=" + hostname + ":" + port;
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof ServerTarget)) {
+            return false;
+        }
+        final ServerTarget other = (ServerTarget) obj;
+        return name.equals(other.name) && hostname.equals(other.hostname) && port == other.port;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s:%d)", name, hostname, port);
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import javax.inject.Singleton;
+
+import org.jboss.as.forge.server.Server;
+import org.jboss.as.forge.server.ServerBuilder;
+import org.jboss.as.forge.util.Files;
+import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Streams;
+
+/**
+ * A pool of booted standalone servers with no deployments, at most one per version and installation, waiting to be
+ * adopted by the start command.
+ * <p/>
+ * Each standby server runs from its own copy of the {@code standalone} base directory of the installation, i.e. the
+ * configuration, deployments and deployment content, and with its own port offset so it does not conflict with other
+ * servers using the same installation. A standby server is only adopted if it was booted with the same launch
+ * settings, e.g. the JVM arguments and server configuration, the start command would use. Adopting a standby server
+ * only takes as long as the server needs to finish booting, if it has not already, and the pool is refilled in the
+ * background.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@Singleton
+public class StandbyPool {
+
+    /**
+     * The difference between the port offsets of the standby servers.
+     */
+    static final int PORT_OFFSET_STEP = 100;
+
+    private static final int MAX_SLOTS = 50;
+
+    private static final String[][] BASE_DIR_PATHS = {
+            {"configuration"},
+            {"deployments"},
+            {"data", "content"},
+    };
+
+    private final ConcurrentMap<String, Future<Standby>> standby = new ConcurrentHashMap<String, Future<Standby>>();
+    // Guarded by itself
+    private final Set<Integer> portOffsets = new HashSet<Integer>();
+
+    private ExecutorService executor;
+
+    /**
+     * A booted server which has not been adopted or an adopted server which has not been {@link #release(Standby)
+     * released}.
+     */
+    static final class Standby {
+        private final Server server;
+        private final ServerConsoleWrapper console;
+        private final File baseDir;
+        private final int portOffset;
+
+        private Standby(final Server server, final ServerConsoleWrapper console, final File baseDir, final int portOffset) {
+            this.server = server;
+            this.console = console;
+            this.baseDir = baseDir;
+            this.portOffset = portOffset;
+        }
+
+        Server getServer() {
+            return server;
+        }
+
+        ServerConsoleWrapper getConsole() {
+            return console;
+        }
+
+        int getPortOffset() {
+            return portOffset;
+        }
+    }
+
+    @PreDestroy
+    protected void cleanUp() {
+        drain();
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Takes the standby server for the version and installation out of the pool. If the standby server is still
+     * booting this waits for it to finish. A standby server booted with different launch settings is not taken.
+     *
+     * @param version   the version of the server
+     * @param jbossHome the installation of the server
+     * @param builder   the builder a cold start would use, only used to compare the launch settings
+     *
+     * @return the standby server or {@code null} if the pool has no running server for the version, installation and
+     *         launch settings
+     */
+    Standby take(final Version version, final File jbossHome, final ServerBuilder builder) {
+        final Future<Standby> future = standby.remove(createKey(version, jbossHome, builder));
+        if (future == null) {
+            return null;
+        }
+        try {
+            final Standby result = future.get();
+            if (result.server.isRunning()) {
+                return result;
+            }
+            release(result);
+            Streams.safeClose(result.console);
+        } catch (ExecutionException ignore) {
+            // The standby server failed to boot, a cold start will report the failure
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Boots a standby server for the version and installation in the background unless the pool already has one with
+     * the same launch settings. A standby server for the version and installation booted with other launch settings,
+     * e.g. before the JVM arguments were changed, is stopped.
+     *
+     * @param version   the version of the server
+     * @param jbossHome the installation of the server
+     * @param builder   the builder for the server, the base directory, port offset and output are set by the pool
+     * @param console   the console the output of the server is written to, closed if the server fails to boot
+     * @param timeout   the timeout in seconds to wait for the server to boot
+     *
+     * @return {@code true} if a standby server is booted, {@code false} if the pool already has a server for the
+     *         version, installation and launch settings
+     */
+    boolean fill(final Version version, final File jbossHome, final ServerBuilder builder, final ServerConsoleWrapper console, final long timeout) {
+        final FutureTask<Standby> task = new FutureTask<Standby>(new Callable<Standby>() {
+            @Override
+            public Standby call() throws Exception {
+                return boot(jbossHome, builder, console, timeout);
+            }
+        });
+        final String key = createKey(version, jbossHome, builder);
+        if (standby.putIfAbsent(key, task) != null) {
+            Streams.safeClose(console);
+            return false;
+        }
+        // Stop the standby servers booted with previous launch settings
+        final String prefix = createKey(version, jbossHome);
+        for (String existing : new ArrayList<String>(standby.keySet())) {
+            if (existing.startsWith(prefix) && !existing.equals(key)) {
+                final Future<Standby> stale = standby.remove(existing);
+                if (stale != null) {
+                    discard(stale);
+                }
+            }
+        }
+        getExecutor().execute(task);
+        return true;
+    }
+
+    /**
+     * Returns the number of standby servers in the pool, including servers still booting.
+     *
+     * @return the number of standby servers
+     */
+    int size() {
+        return standby.size();
+    }
+
+    /**
+     * Stops all the standby servers in the pool.
+     */
+    void drain() {
+        final List<Future<Standby>> futures = new ArrayList<Future<Standby>>(standby.values());
+        standby.clear();
+        for (Future<Standby> future : futures) {
+            stop(future);
+        }
+    }
+
+    /**
+     * Stops the server if still running and deletes the base directory of the server. The console is not closed as
+     * an adopted server hands the console over to the facet.
+     *
+     * @param standby the standby server to release
+     */
+    void release(final Standby standby) {
+        try {
+            standby.server.stop();
+        } finally {
+            Files.deleteRecursively(standby.baseDir);
+            synchronized (portOffsets) {
+                portOffsets.remove(standby.portOffset);
+            }
+        }
+    }
+
+    /**
+     * Stops the standby server in the background.
+     */
+    private void discard(final Future<Standby> future) {
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                stop(future);
+            }
+        });
+    }
+
+    private void stop(final Future<Standby> future) {
+        if (!future.cancel(true)) {
+            try {
+                final Standby result = future.get();
+                release(result);
+                Streams.safeClose(result.console);
+            } catch (Exception ignore) {
+                // The server did not boot
+            }
+        }
+    }
+
+    private Standby boot(final File jbossHome, final ServerBuilder builder, final ServerConsoleWrapper console, final long timeout) throws IOException {
+        final int portOffset = reservePortOffset(builder);
+        File baseDir = null;
+        Server server = null;
+        boolean booted = false;
+        try {
+            // The directory is unique to this process as other shells may run standby servers from the same installation
+            baseDir = File.createTempFile("jboss-as-standby-" + portOffset + "-", "");
+            if (!baseDir.delete() || !baseDir.mkdirs() || !copyBaseDir(Files.createFile(jbossHome, "standalone"), baseDir)) {
+                throw new IOException(Messages.INSTANCE.getMessage("standby.base.dir.failed", baseDir));
+            }
+            server = builder.setBaseDir(baseDir)
+                    .setPortOffset(portOffset)
+                    .setOutputStream(console)
+                    .build();
+            server.start(timeout);
+            booted = true;
+            return new Standby(server, console, baseDir, portOffset);
+        } finally {
+            if (!booted) {
+                if (server != null) {
+                    server.stop();
+                }
+                Streams.safeClose(console);
+                if (baseDir != null) {
+                    Files.deleteRecursively(baseDir);
+                }
+                synchronized (portOffsets) {
+                    portOffsets.remove(portOffset);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserves the lowest port offset not used by a standby or adopted server. Offsets with a management port already
+     * in use, e.g. by a server of another process, are skipped.
+     */
+    private int reservePortOffset(final ServerBuilder builder) throws IOException {
+        synchronized (portOffsets) {
+            for (int slot = 1; slot <= MAX_SLOTS; slot++) {
+                final int portOffset = PORT_OFFSET_STEP * slot;
+                if (!portOffsets.contains(portOffset) && !builder.setPortOffset(portOffset).isManagementPortInUse()) {
+                    portOffsets.add(portOffset);
+                    return portOffset;
+                }
+            }
+        }
+        throw new IOException(Messages.INSTANCE.getMessage("standby.no.port.offset", MAX_SLOTS));
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "AS7-Standby-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Copies the parts of the base directory of the installation a cold start reads: the configuration, the
+     * deployments picked up by the deployment scanner and the content of the deployments in the configuration.
+     */
+    private static boolean copyBaseDir(final File standaloneDir, final File baseDir) throws IOException {
+        for (String[] path : BASE_DIR_PATHS) {
+            final File src = Files.createFile(standaloneDir, path);
+            if (src.isDirectory()) {
+                final File target = Files.createFile(baseDir, path);
+                final File parent = target.getParentFile();
+                if ((!parent.isDirectory() && !parent.mkdirs()) || !Files.cloneDirectory(src, target)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String createKey(final Version version, final File jbossHome) {
+        return version + "@" + jbossHome.getAbsolutePath() + "|";
+    }
+
+    private static String createKey(final Version version, final File jbossHome, final ServerBuilder builder) {
+        return createKey(version, jbossHome) + builder.getLaunchSettings();
+    }
+}
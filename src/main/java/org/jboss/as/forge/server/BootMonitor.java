@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Watches the console output of a booting server for the boot complete message.
+ * <p/>
+ * The monitor is fed by the console consumer and releases any waiting threads once the boot complete message has been
+ * seen or the console stream has been closed, which indicates the process has exited.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class BootMonitor {
+
+    /**
+     * Matches {@code JBAS015874} (started) and {@code JBAS015875} (started with errors) as well as the un-coded 7.0.x
+     * boot message.
+     */
+    private static final Pattern BOOT_COMPLETE = Pattern.compile("JBAS01587[45]|JBoss AS \\S+ \"[^\"]*\" started");
+
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final long SOCKET_CONNECT_TIMEOUT = 250L;
+    private static final long SOCKET_RETRY_INTERVAL = 25L;
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final StringBuilder line = new StringBuilder(256);
+    private volatile boolean bootComplete;
+    private volatile boolean consoleClosed;
+
+    /**
+     * Scans the bytes written to the console for the boot complete message. Once the message has been found this is a
+     * no-op.
+     *
+     * @param b   the bytes
+     * @param off the offset
+     * @param len the number of bytes
+     */
+    void scan(final byte[] b, final int off, final int len) {
+        if (bootComplete) {
+            return;
+        }
+        for (int i = off; i < off + len; i++) {
+            final char c = (char) (b[i] & 0xFF);
+            if (c == '\n' || c == '\r') {
+                if (line.length() > 0 && BOOT_COMPLETE.matcher(line).find()) {
+                    bootComplete = true;
+                    line.setLength(0);
+                    latch.countDown();
+                    return;
+                }
+                line.setLength(0);
+            } else if (line.length() < MAX_LINE_LENGTH) {
+                line.append(c);
+            }
+        }
+    }
+
+    /**
+     * Invoked once the console stream has been closed.
+     */
+    void consoleClosed() {
+        consoleClosed = true;
+        latch.countDown();
+    }
+
+    /**
+     * Checks whether the boot complete message has been seen.
+     *
+     * @return {@code true} if the boot complete message was seen, otherwise {@code false}
+     */
+    boolean isBootComplete() {
+        return bootComplete;
+    }
+
+    /**
+     * Checks whether the console stream has been closed.
+     *
+     * @return {@code true} if the console was closed, otherwise {@code false}
+     */
+    boolean isConsoleClosed() {
+        return consoleClosed;
+    }
+
+    /**
+     * Waits for the boot complete message or the console being closed, whichever happens first.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     *
+     * @return {@code true} if the boot complete message was seen, otherwise {@code false}
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    boolean awaitBootComplete(final long timeout) throws InterruptedException {
+        if (timeout > 0L) {
+            latch.await(timeout, TimeUnit.MILLISECONDS);
+        }
+        return bootComplete;
+    }
+
+    /**
+     * Waits for the management interface to accept connections. No management operations are executed.
+     *
+     * @param address  the address of the management interface
+     * @param deadline the deadline, in terms of {@link System#nanoTime()}, to wait until
+     *
+     * @return {@code true} if the socket accepted a connection before the deadline, otherwise {@code false}
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    boolean awaitManagementSocket(final InetSocketAddress address, final long deadline) throws InterruptedException {
+        do {
+            if (isAccepting(address)) {
+                return true;
+            }
+            if (consoleClosed) {
+                return false;
+            }
+            Thread.sleep(SOCKET_RETRY_INTERVAL);
+        } while (System.nanoTime() - deadline < 0L);
+        return false;
+    }
+
+    /**
+     * Checks whether the management interface currently accepts connections.
+     *
+     * @param address the address of the management interface
+     *
+     * @return {@code true} if a connection could be made, otherwise {@code false}
+     */
+    static boolean isAccepting(final InetSocketAddress address) {
+        final Socket socket = new Socket();
+        try {
+            socket.connect(address, (int) SOCKET_CONNECT_TIMEOUT);
+            return true;
+        } catch (IOException ignore) {
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+                // no-op
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.as.forge.util.Files;
+import org.jboss.as.forge.util.Processes;
+
+/**
+ * Records and uses a class data sharing (CDS) archive of the classes loaded while a server boots, one archive for each
+ * server version and JVM.
+ * <p/>
+ * The first boot records the archive, later boots map the archive rather than loading, parsing and verifying the
+ * classes again. Only HotSpot JVMs which can archive the classes of custom class loaders, as used by JBoss Modules,
+ * are supported:
+ * <ul>
+ * <li>Java 19 and later create and update the archive automatically</li>
+ * <li>Java 13 to 18 record a dynamic archive when the first server exits and use it for later boots</li>
+ * </ul>
+ * For any other JVM no arguments are added and the server boots as it always did.
+ * <p/>
+ * None of the supported 7.0 and 7.1 servers boot on a JVM new enough to archive their classes, so for these servers
+ * no arguments are ever added. The settings are kept for servers which do run on such a JVM and are not offered as a
+ * command.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class ClassDataSharing {
+
+    private static final File DEFAULT_ARCHIVE_DIR = new File(System.getProperty("user.home"), Files.createPath(".forge", "jboss-as", "cds"));
+    private static final Pattern VERSION_PATTERN = Pattern.compile("version \"(?:1\\.)?(\\d+)[^\"]*\"");
+    private static final int MIN_DYNAMIC_ARCHIVE_VERSION = 13;
+    private static final int MIN_AUTO_ARCHIVE_VERSION = 19;
+    // The output of java -version keyed by the Java executable, the output is only read once per executable
+    private static final Map<String, String> JVM_VERSIONS = new ConcurrentHashMap<String, String>();
+
+    private final File archive;
+    private final List<String> jvmArgs;
+
+    private ClassDataSharing(final File archive, final List<String> jvmArgs) {
+        this.archive = archive;
+        this.jvmArgs = jvmArgs;
+    }
+
+    /**
+     * Determines the arguments required for class data sharing for the server version and JVM.
+     *
+     * @param serverVersion the version of the server
+     * @param javaHome      the Java home directory or {@code null} if the {@code java} executable on the path is used
+     *
+     * @return the class data sharing settings, the {@link #getJvmArgs() arguments} are empty if class data sharing is
+     *         not supported
+     */
+    public static ClassDataSharing of(final String serverVersion, final String javaHome) {
+        return of(DEFAULT_ARCHIVE_DIR, serverVersion, javaHome);
+    }
+
+    static ClassDataSharing of(final File archiveDir, final String serverVersion, final String javaHome) {
+        final String javaExec = (javaHome == null ? "java" : Files.createPath(javaHome, "bin", "java"));
+        final String jvmVersion = readJvmVersion(javaExec);
+        final int major = parseMajorVersion(jvmVersion);
+        if (major < MIN_DYNAMIC_ARCHIVE_VERSION || jvmVersion.contains("OpenJ9")) {
+            return new ClassDataSharing(null, Collections.<String>emptyList());
+        }
+        // The archive is only valid for the exact JVM which recorded it
+        final String name = String.format("%s-%08x.jsa", serverVersion, (javaExec + jvmVersion).hashCode());
+        final File archive = new File(archiveDir, name);
+        if (!archiveDir.isDirectory() && !archiveDir.mkdirs()) {
+            return new ClassDataSharing(null, Collections.<String>emptyList());
+        }
+        final List<String> jvmArgs;
+        if (major >= MIN_AUTO_ARCHIVE_VERSION) {
+            jvmArgs = Arrays.asList("-XX:+AutoCreateSharedArchive", "-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        } else if (archive.isFile()) {
+            jvmArgs = Collections.singletonList("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        } else {
+            jvmArgs = Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+        }
+        return new ClassDataSharing(archive, jvmArgs);
+    }
+
+    /**
+     * Returns the JVM arguments to add to the launch command.
+     *
+     * @return the JVM arguments, empty if class data sharing is not supported
+     */
+    public List<String> getJvmArgs() {
+        return jvmArgs;
+    }
+
+    /**
+     * Indicates whether class data sharing is supported for the JVM.
+     *
+     * @return {@code true} if supported, otherwise {@code false}
+     */
+    public boolean isSupported() {
+        return archive != null;
+    }
+
+    static int parseMajorVersion(final String jvmVersion) {
+        final Matcher matcher = VERSION_PATTERN.matcher(jvmVersion);
+        return (matcher.find() ? Integer.parseInt(matcher.group(1)) : -1);
+    }
+
+    private static String readJvmVersion(final String javaExec) {
+        String result = JVM_VERSIONS.get(javaExec);
+        if (result == null) {
+            final StringBuilder output = new StringBuilder();
+            try {
+                Processes.execute(Arrays.asList(javaExec, "-version"), output);
+            } catch (IOException ignore) {
+                // Unknown JVM, class data sharing is not used
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            result = output.toString();
+            if (!Thread.currentThread().isInterrupted()) {
+                JVM_VERSIONS.put(javaExec, result);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.security.auth.callback.CallbackHandler;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.as.forge.util.Files;
+import org.jboss.as.forge.util.Streams;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+
+/**
+ * A managed domain launched through the process controller. The domain is considered running once the host controller
+ * accepts management operations and each server configured to start automatically has finished starting.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class DomainServer extends Server {
+
+    private static final String CONFIG_PATH = "/domain/configuration/";
+    private static final String LOG_PATH = "/domain/log/";
+    private static final String AUTO_START = "auto-start";
+    private static final String HOST = "host";
+    private static final String SERVER_CONFIG = "server-config";
+    private static final String STATUS = "status";
+    private static final String STARTED = "STARTED";
+    private static final String FAILED = "FAILED";
+    private static final String DISABLED = "DISABLED";
+
+    private final File jbossHome;
+    private final CallbackHandler callbackHandler;
+    private final File modulesDir;
+    private final InetAddress hostAddress;
+    private final String[] jvmArgs;
+    private final String javaHome;
+    private final int port;
+    private final String domainConfig;
+    private final String hostConfig;
+    private boolean isRunning;
+    private String hostName;
+    private ModelControllerClient client;
+
+    DomainServer(final OutputStream out, final File jbossHome, final CallbackHandler callbackHandler, final File modulesDir,
+                 final InetAddress hostAddress, final String[] jvmArgs, final String javaHome, final int port,
+                 final String domainConfig, final String hostConfig) {
+        super(out);
+        this.jbossHome = jbossHome;
+        this.callbackHandler = callbackHandler;
+        this.modulesDir = modulesDir;
+        this.hostAddress = hostAddress;
+        this.jvmArgs = jvmArgs;
+        this.javaHome = javaHome;
+        this.port = port;
+        this.domainConfig = domainConfig;
+        this.hostConfig = hostConfig;
+        isRunning = false;
+    }
+
+    @Override
+    protected void init() throws IOException {
+        client = ModelControllerClient.Factory.create(hostAddress, port, callbackHandler);
+    }
+
+    @Override
+    protected void stopServer(final long timeout) {
+        try {
+            if (client != null) {
+                try {
+                    // Shutting down the host controller stops the servers and the process controller
+                    if (hostName != null) {
+                        executeShutdown(client, ServerOperations.createOperation(ServerOperations.SHUTDOWN, ServerOperations.createAddress(HOST, hostName)), timeout);
+                    }
+                } finally {
+                    Streams.safeClose(client);
+                    client = null;
+                }
+            }
+        } finally {
+            isRunning = false;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return isRunning;
+    }
+
+    @Override
+    public synchronized ModelControllerClient getClient() {
+        return client;
+    }
+
+    @Override
+    protected InetSocketAddress getManagementAddress() {
+        return new InetSocketAddress(hostAddress, port);
+    }
+
+    @Override
+    protected List<String> createLaunchCommand() {
+        final File modulesJar = new File(Files.createPath(jbossHome.getAbsolutePath(), "jboss-modules.jar"));
+        if (!modulesJar.exists())
+            throw new IllegalStateException("Cannot find: " + modulesJar);
+        final String javaPath = (javaHome == null ? "java" : Files.createPath(javaHome, "bin", "java"));
+        String javaExec = javaPath;
+        if (javaExec.contains(" ")) {
+            javaExec = "\"" + javaExec + "\"";
+        }
+        final String logging = "-Dlogging.configuration=file:" + jbossHome + CONFIG_PATH + "logging.properties";
+
+        // The process controller launches the host controller which launches the servers
+        final List<String> cmd = new ArrayList<String>();
+        cmd.add(javaExec);
+        cmd.add("-D[Process Controller]");
+        cmd.add("-Djboss.home.dir=" + jbossHome);
+        cmd.add("-Dorg.jboss.boot.log.file=" + jbossHome + LOG_PATH + "process-controller.log");
+        cmd.add(logging);
+        cmd.add("-jar");
+        cmd.add(modulesJar.getAbsolutePath());
+        cmd.add("-mp");
+        cmd.add(modulesDir.getAbsolutePath());
+        cmd.add("org.jboss.as.process-controller");
+        cmd.add("-jboss-home");
+        cmd.add(jbossHome.getAbsolutePath());
+        cmd.add("-jvm");
+        cmd.add(javaPath);
+        cmd.add("-mp");
+        cmd.add(modulesDir.getAbsolutePath());
+        // Arguments for the host controller
+        cmd.add("--");
+        cmd.add("-Djboss.home.dir=" + jbossHome);
+        cmd.add("-Dorg.jboss.boot.log.file=" + jbossHome + LOG_PATH + "host-controller.log");
+        cmd.add(logging);
+        if (jvmArgs != null) {
+            Collections.addAll(cmd, jvmArgs);
+        }
+        cmd.add("--");
+        cmd.add("-default-jvm");
+        cmd.add(javaPath);
+        if (domainConfig != null) {
+            cmd.add("--domain-config=" + domainConfig);
+        }
+        if (hostConfig != null) {
+            cmd.add("--host-config=" + hostConfig);
+        }
+        return cmd;
+    }
+
+    @Override
+    protected long checkServerState() {
+        if (client == null) {
+            isRunning = false;
+            return 0;
+        } else {
+            final long start = System.currentTimeMillis();
+            try {
+                isRunning = checkHostState();
+            } catch (Throwable ignore) {
+                isRunning = false;
+            }
+            final long end = System.currentTimeMillis();
+            return (end - start);
+        }
+    }
+
+    private boolean checkHostState() throws IOException {
+        if (hostName == null) {
+            // CLI :read-children-names(child-type=host)
+            final ModelNode op = ServerOperations.createOperation(ServerOperations.READ_CHILDREN_NAMES);
+            op.get(ClientConstants.CHILD_TYPE).set(HOST);
+            final ModelNode result = client.execute(op);
+            if (!ServerOperations.isSuccessfulOutcome(result) || ServerOperations.readResult(result).asList().isEmpty()) {
+                return false;
+            }
+            // Only the host launched is known to the host controller
+            hostName = ServerOperations.readResult(result).get(0).asString();
+        }
+        // CLI /host=name:read-children-resources(child-type=server-config, include-runtime=true)
+        final ModelNode op = ServerOperations.createOperation(ServerOperations.READ_CHILDREN_RESOURCES, ServerOperations.createAddress(HOST, hostName));
+        op.get(ClientConstants.CHILD_TYPE).set(SERVER_CONFIG);
+        op.get(ClientConstants.INCLUDE_RUNTIME).set(true);
+        final ModelNode result = client.execute(op);
+        if (!ServerOperations.isSuccessfulOutcome(result)) {
+            return false;
+        }
+        final ModelNode servers = ServerOperations.readResult(result);
+        if (servers.isDefined()) {
+            for (Property server : servers.asPropertyList()) {
+                final ModelNode config = server.getValue();
+                if (config.hasDefined(AUTO_START) && !config.get(AUTO_START).asBoolean()) {
+                    continue;
+                }
+                final String status = (config.hasDefined(STATUS) ? config.get(STATUS).asString() : null);
+                // A failed server will not start, waiting for it would only delay reporting the failure
+                if (!STARTED.equals(status) && !FAILED.equals(status) && !DISABLED.equals(status)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
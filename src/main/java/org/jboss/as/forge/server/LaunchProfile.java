@@ -0,0 +1,236 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.as.forge.util.Files;
+import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Processes;
+
+/**
+ * A named set of heap, garbage collector, JIT compiler and JBoss Modules options used to launch a standalone server.
+ * <p/>
+ * The options are validated when the profile is created: only JVM options are allowed, at most one garbage collector
+ * may be selected, the initial heap must not be larger than the maximum heap and the tiered compilation level must be
+ * valid. Options a specific JVM does not support are reported by {@link #verify(String)}.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class LaunchProfile {
+
+    /**
+     * Boots as fast as possible by only using the client compiler, a small heap and the serial collector.
+     */
+    public static final LaunchProfile FAST_BOOT = new LaunchProfile("fast-boot", Arrays.asList(
+            "-Xms64m", "-Xmx512m",
+            "-XX:+UseSerialGC",
+            "-XX:+TieredCompilation", "-XX:TieredStopAtLevel=1",
+            "-Djboss.modules.lockless=true"));
+
+    /**
+     * Favours peak throughput with a fixed size heap, the parallel collector and the full tiered compiler.
+     */
+    public static final LaunchProfile THROUGHPUT = new LaunchProfile("throughput", Arrays.asList(
+            "-Xms1g", "-Xmx1g",
+            "-XX:+UseParallelGC",
+            "-XX:+TieredCompilation", "-XX:ReservedCodeCacheSize=128m",
+            "-Djboss.modules.lockless=true"));
+
+    /**
+     * Uses as little memory as possible with a small heap, small thread stacks and a small code cache.
+     */
+    public static final LaunchProfile LOW_FOOTPRINT = new LaunchProfile("low-footprint", Arrays.asList(
+            "-Xms32m", "-Xmx256m",
+            "-XX:+UseSerialGC",
+            "-Xss256k",
+            "-XX:+TieredCompilation", "-XX:TieredStopAtLevel=1", "-XX:ReservedCodeCacheSize=32m"));
+
+    private static final Map<String, LaunchProfile> DEFAULTS;
+
+    static {
+        final Map<String, LaunchProfile> defaults = new LinkedHashMap<String, LaunchProfile>();
+        defaults.put(FAST_BOOT.getName(), FAST_BOOT);
+        defaults.put(THROUGHPUT.getName(), THROUGHPUT);
+        defaults.put(LOW_FOOTPRINT.getName(), LOW_FOOTPRINT);
+        DEFAULTS = Collections.unmodifiableMap(defaults);
+    }
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-z0-9][a-z0-9-]*");
+    private static final Pattern JVM_OPTION = Pattern.compile("-(X|XX:|D|server$|client$|ea|da|esa$|dsa$|verbose|javaagent:|agentlib:|agentpath:).*");
+    private static final Pattern GC_OPTION = Pattern.compile("-XX:\\+Use(Serial|Parallel|ConcMarkSweep|G1|Z|Shenandoah|Epsilon)GC");
+    private static final Pattern HEAP_OPTION = Pattern.compile("-Xm([sx])(\\d+)([kKmMgG]?)");
+    private static final Pattern TIERED_STOP_OPTION = Pattern.compile("-XX:TieredStopAtLevel=(.*)");
+
+    private final String name;
+    private final List<String> jvmArgs;
+
+    private LaunchProfile(final String name, final List<String> jvmArgs) {
+        this.name = name;
+        this.jvmArgs = Collections.unmodifiableList(new ArrayList<String>(jvmArgs));
+    }
+
+    /**
+     * Creates a new profile validating the options.
+     *
+     * @param name    the name of the profile
+     * @param jvmArgs the JVM options of the profile
+     *
+     * @return the profile
+     *
+     * @throws IllegalArgumentException if the name or options are invalid
+     */
+    public static LaunchProfile of(final String name, final List<String> jvmArgs) {
+        final Messages messages = Messages.INSTANCE;
+        if (name == null || !NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException(messages.getMessage("profile.invalid.name", name));
+        }
+        String gc = null;
+        long initialHeap = -1L;
+        long maxHeap = -1L;
+        for (String arg : jvmArgs) {
+            if (!JVM_OPTION.matcher(arg).matches()) {
+                throw new IllegalArgumentException(messages.getMessage("profile.invalid.option", name, arg));
+            }
+            final Matcher gcMatcher = GC_OPTION.matcher(arg);
+            if (gcMatcher.matches()) {
+                if (gc != null && !gc.equals(gcMatcher.group(1))) {
+                    throw new IllegalArgumentException(messages.getMessage("profile.invalid.gc", name, gc, gcMatcher.group(1)));
+                }
+                gc = gcMatcher.group(1);
+            }
+            final Matcher heapMatcher = HEAP_OPTION.matcher(arg);
+            if (heapMatcher.matches()) {
+                final long size = toBytes(heapMatcher.group(2), heapMatcher.group(3));
+                if ("s".equals(heapMatcher.group(1))) {
+                    initialHeap = size;
+                } else {
+                    maxHeap = size;
+                }
+            }
+            final Matcher tieredMatcher = TIERED_STOP_OPTION.matcher(arg);
+            if (tieredMatcher.matches() && !tieredMatcher.group(1).matches("[0-4]")) {
+                throw new IllegalArgumentException(messages.getMessage("profile.invalid.option", name, arg));
+            }
+        }
+        if (initialHeap > 0L && maxHeap > 0L && initialHeap > maxHeap) {
+            throw new IllegalArgumentException(messages.getMessage("profile.invalid.heap", name));
+        }
+        return new LaunchProfile(name, jvmArgs);
+    }
+
+    /**
+     * Returns the built-in profiles keyed by name.
+     *
+     * @return the built-in profiles
+     */
+    public static Map<String, LaunchProfile> getDefaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns the name of the profile.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the JVM options of the profile.
+     *
+     * @return an unmodifiable list of the options
+     */
+    public List<String> getJvmArgs() {
+        return jvmArgs;
+    }
+
+    /**
+     * Checks the JVM accepts the options of the profile by launching it with the options and {@code -version}.
+     *
+     * @param javaHome the Java home directory or {@code null} if the {@code java} executable on the path is used
+     *
+     * @return {@code null} if the JVM accepts the options, otherwise the error reported by the JVM
+     */
+    public String verify(final String javaHome) {
+        final List<String> cmd = new ArrayList<String>();
+        cmd.add(javaHome == null ? "java" : Files.createPath(javaHome, "bin", "java"));
+        cmd.addAll(jvmArgs);
+        cmd.add("-version");
+        final StringBuilder output = new StringBuilder();
+        try {
+            if (Processes.execute(cmd, output) == 0) {
+                return null;
+            }
+        } catch (IOException e) {
+            return e.getLocalizedMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e.getLocalizedMessage();
+        }
+        return output.toString().trim();
+    }
+
+    private static long toBytes(final String size, final String unit) {
+        final long value = Long.parseLong(size);
+        if (unit.equalsIgnoreCase("k")) {
+            return value * 1024L;
+        } else if (unit.equalsIgnoreCase("m")) {
+            return value * 1024L * 1024L;
+        } else if (unit.equalsIgnoreCase("g")) {
+            return value * 1024L * 1024L * 1024L;
+        }
+        return value;
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode() * 31 + jvmArgs.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof LaunchProfile)) {
+            return false;
+        }
+        final LaunchProfile other = (LaunchProfile) obj;
+        return name.equals(other.name) && jvmArgs.equals(other.jvmArgs);
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + jvmArgs;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.as.forge.server.deployment.Deployment.Type;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * An in-process registry of the latencies and counters of the server lifecycle, e.g. how long the server took to boot
+ * or a deployment took to execute. The metrics are kept for the life of the shell and are not persisted.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class Metrics {
+
+    public static final Metrics INSTANCE = new Metrics();
+
+    public static final String BOOT = "boot";
+    public static final String DEPLOY = "deploy";
+    public static final String REDEPLOY = "redeploy";
+    public static final String SHUTDOWN = "shutdown";
+    public static final String UNDEPLOY = "undeploy";
+    public static final String CLI = "cli";
+    public static final String MANAGEMENT = "management";
+    public static final String RECONNECTS = "management.reconnects";
+
+    private static final double[] PERCENTILES = {50d, 90d, 99d, 99.9d};
+
+    private static final String FAILURES = ".failures";
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the name of the histogram the latencies of the deployment type are recorded in.
+     *
+     * @param type the type of the deployment
+     *
+     * @return the name of the histogram
+     */
+    public static String getName(final Type type) {
+        switch (type) {
+            case REDEPLOY:
+                return REDEPLOY;
+            case UNDEPLOY:
+            case UNDEPLOY_IGNORE_MISSING:
+                return UNDEPLOY;
+            default:
+                return DEPLOY;
+        }
+    }
+
+    /**
+     * Records a latency in the histogram, creating the histogram if required.
+     *
+     * @param name  the name of the histogram
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(final String name, final long nanos) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            final LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Increments the failure counter of the histogram. Failures are not recorded in the histogram itself.
+     *
+     * @param name the name of the histogram
+     */
+    public void recordFailure(final String name) {
+        increment(name + FAILURES);
+    }
+
+    /**
+     * Increments the counter, creating the counter if required.
+     *
+     * @param name the name of the counter
+     */
+    public void increment(final String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            final AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Returns the histograms sorted by the name.
+     *
+     * @return the histograms
+     */
+    public SortedMap<String, LatencyHistogram> getHistograms() {
+        return new TreeMap<String, LatencyHistogram>(histograms);
+    }
+
+    /**
+     * Returns the current values of the counters sorted by the name.
+     *
+     * @return the counters
+     */
+    public SortedMap<String, Long> getCounters() {
+        final SortedMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * Clears all histograms and counters.
+     */
+    public void reset() {
+        histograms.clear();
+        counters.clear();
+    }
+
+    /**
+     * Returns the metrics as a model, use {@link ModelNode#toJSONString(boolean)} to export the metrics as JSON. All
+     * latencies are in microseconds.
+     *
+     * @return the metrics
+     */
+    public ModelNode toModelNode() {
+        final ModelNode result = new ModelNode();
+        final ModelNode histogramsNode = result.get("histograms");
+        histogramsNode.setEmptyObject();
+        for (Map.Entry<String, LatencyHistogram> entry : getHistograms().entrySet()) {
+            final LatencyHistogram histogram = entry.getValue();
+            final ModelNode node = histogramsNode.get(entry.getKey());
+            node.get("count").set(histogram.getCount());
+            node.get("min").set(histogram.getMin());
+            node.get("mean").set(Math.round(histogram.getMean()));
+            for (double percentile : PERCENTILES) {
+                node.get(formatPercentile(percentile)).set(histogram.getValueAtPercentile(percentile));
+            }
+            node.get("max").set(histogram.getMax());
+        }
+        final ModelNode countersNode = result.get("counters");
+        countersNode.setEmptyObject();
+        for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            countersNode.get(entry.getKey()).set(entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Formats the percentile as the label used for the value of the percentile, e.g. {@code p99.9}.
+     *
+     * @param percentile the percentile
+     *
+     * @return the label
+     */
+    private static String formatPercentile(final double percentile) {
+        if (percentile == Math.rint(percentile)) {
+            return "p" + (long) percentile;
+        }
+        return "p" + percentile;
+    }
+}
@@ -25,12 +25,20 @@ package org.jboss.as.forge.server;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.forge.server.ShutdownReport.Stage;
 import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Processes;
 import org.jboss.dmr.ModelNode;
 
 /**
@@ -95,8 +103,20 @@ public abstract class Server {
 
     }
 
-    private Process process;
+    /**
+     * The default number of seconds to wait for the server to shut down gracefully
+     */
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT = 10L;
+
+    private static final long BOOT_FALLBACK_INTERVAL = 2000L;
+    private static final long TERMINATE_TIMEOUT = 5000L;
+    private static final long KILL_TIMEOUT = 5000L;
+    private static final int MIN_CONSOLE_BUFFER = 8192;
+    private static final int MAX_CONSOLE_BUFFER = 65536;
+
+    private volatile Process process;
     private final OutputStream out;
+    private volatile long startupTime = -1L;
 
     protected final Messages messages = Messages.INSTANCE;
 
@@ -106,39 +126,96 @@ public abstract class Server {
 
     /**
      * Starts the server.
+     * <p/>
+     * The console output is watched for the boot complete message. Once seen the management socket is checked for
+     * accepting connections and the server state is then confirmed with a single management operation. If the boot
+     * message is not seen, e.g. the console handler has been removed, the state is checked at a slower interval once the
+     * management socket is accepting connections.
+     *
+     * @param timeout the timeout in seconds to wait for the server to start
      *
      * @throws java.io.IOException the an error occurs creating the process
      */
     public synchronized final void start(final long timeout) throws IOException {
         SecurityActions.registerShutdown(this);
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.SECONDS.toNanos(timeout);
         final List<String> cmd = createLaunchCommand();
         final ProcessBuilder processBuilder = new ProcessBuilder(cmd);
         processBuilder.redirectErrorStream(true);
-        process = processBuilder.start();
-        startConsoleConsumer(process.getInputStream());
-        long startTimeout = timeout * 1000;
-        boolean serverAvailable = false;
-        long sleep = 50;
+        try {
+            process = processBuilder.start();
+        } catch (IOException e) {
+            Metrics.INSTANCE.recordFailure(Metrics.BOOT);
+            throw e;
+        }
+        final BootMonitor monitor = new BootMonitor();
+        startConsoleConsumer(process.getInputStream(), monitor);
         init();
-        while (startTimeout > 0 && !serverAvailable) {
-            serverAvailable = isRunning();
-            if (!serverAvailable) {
-                if (processHasDied(process))
-                    break;
-                try {
-                    Thread.sleep(sleep);
-                } catch (InterruptedException e) {
-                    serverAvailable = false;
-                    break;
-                }
-                startTimeout -= sleep + checkServerState();
-                sleep = Math.max(sleep / 2, 100);
-            }
+        boolean serverAvailable = false;
+        try {
+            serverAvailable = awaitRunning(monitor, deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         if (!serverAvailable) {
-            destroyProcess();
+            Metrics.INSTANCE.recordFailure(Metrics.BOOT);
+            destroyProcess(new ShutdownReport());
             throw new IllegalStateException(messages.getMessage("server.not.started", timeout));
         }
+        final long elapsed = System.nanoTime() - start;
+        Metrics.INSTANCE.record(Metrics.BOOT, elapsed);
+        startupTime = TimeUnit.NANOSECONDS.toMillis(elapsed);
+    }
+
+    private boolean awaitRunning(final BootMonitor monitor, final long deadline) throws InterruptedException {
+        final InetSocketAddress address = getManagementAddress();
+        // Wait for the boot message, checking the state at a slow interval in case the message is never logged
+        while (!monitor.awaitBootComplete(Math.min(BOOT_FALLBACK_INTERVAL, remaining(deadline)))) {
+            if (monitor.isConsoleClosed() || processHasDied(process) || remaining(deadline) <= 0L) {
+                return false;
+            }
+            if (BootMonitor.isAccepting(address)) {
+                checkServerState();
+                if (isRunning()) {
+                    return true;
+                }
+            }
+        }
+        if (!monitor.awaitManagementSocket(address, deadline)) {
+            return false;
+        }
+        // Confirm the state, this should only need to happen once
+        long sleep = 50L;
+        checkServerState();
+        while (!isRunning()) {
+            if (processHasDied(process) || remaining(deadline) <= 0L) {
+                return false;
+            }
+            Thread.sleep(sleep);
+            sleep = Math.min(sleep * 2, 500L);
+            checkServerState();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the time, in milliseconds, it took for the server to start and be ready to accept management operations.
+     *
+     * @return the time it took the server to start or {@code -1} if the server has not been successfully started
+     */
+    public long getStartupTime() {
+        return startupTime;
+    }
+
+    /**
+     * Returns the operating system process id of the server.
+     *
+     * @return the process id or {@code -1} if the server has not been started or the id could not be determined
+     */
+    public long getProcessId() {
+        final Process process = this.process;
+        return (process == null ? -1L : Processes.getProcessId(process));
     }
 
     /**
@@ -150,9 +227,12 @@ public abstract class Server {
     protected abstract void init() throws IOException;
 
     /**
-     * Stops the server before the process is destroyed. A no-op override will just destroy the process.
+     * Asks the server to shut down gracefully and closes the client. A no-op override will just destroy the process.
+     *
+     * @param timeout the maximum number of milliseconds to wait for the server to accept the request, 0 or less if the
+     *                request should not be sent as the process has already exited
      */
-    protected abstract void stopServer();
+    protected abstract void stopServer(long timeout);
 
     /**
      * Checks the status of the server and returns {@code true} if the server is fully started.
@@ -175,6 +255,13 @@ public abstract class Server {
      */
     protected abstract List<String> createLaunchCommand();
 
+    /**
+     * Returns the address of the management interface for the server.
+     *
+     * @return the management address
+     */
+    protected abstract InetSocketAddress getManagementAddress();
+
     /**
      * Checks whether the server is running or not. If the server is no longer running the {@link #isRunning()} should
      * return {@code false}.
@@ -185,35 +272,157 @@ public abstract class Server {
     protected abstract long checkServerState();
 
     /**
-     * Stops the server.
+     * Stops the server waiting at most {@value #DEFAULT_SHUTDOWN_TIMEOUT} seconds for a graceful shutdown.
+     *
+     * @return the stages executed to stop the server
+     *
+     * @see #stop(long)
+     */
+    public final ShutdownReport stop() {
+        return stop(DEFAULT_SHUTDOWN_TIMEOUT);
+    }
+
+    /**
+     * Stops the server in stages, each stage is only executed if the process is still running at the end of the
+     * previous stage:
+     * <ol>
+     * <li>the server is asked to shut down and given the timeout to exit</li>
+     * <li>the process is sent {@code SIGTERM} and given {@value #TERMINATE_TIMEOUT} ms to exit</li>
+     * <li>the process is killed and given {@value #KILL_TIMEOUT} ms to exit</li>
+     * </ol>
+     * Finally any child processes, e.g. the servers of a managed domain, which outlived the process are killed. The
+     * stop therefore never takes much longer than the timeout plus {@value #TERMINATE_TIMEOUT} and {@value
+     * #KILL_TIMEOUT} ms. An interrupt while stopping skips the remaining waits so the process is killed right away, the
+     * interrupt status is preserved.
+     *
+     * @param timeout the number of seconds to wait for the server to shut down gracefully
+     *
+     * @return the stages executed to stop the server
      */
-    public final synchronized void stop() {
+    public final synchronized ShutdownReport stop(final long timeout) {
+        final boolean interrupted = Thread.interrupted();
+        final ShutdownReport report = new ShutdownReport();
         try {
-            stopServer();
-        } finally {
-            if (process != null) {
-                process.destroy();
-                try {
-                    process.waitFor();
-                } catch (InterruptedException ignore) {
-                    // no-op
+            final long start = System.nanoTime();
+            final Process process = this.process;
+            final boolean running = (process != null && !processHasDied(process));
+            // The children are no longer children of the process once it exits so they need to be found up front
+            final List<Long> children = (running ? Processes.getDescendants(Processes.getProcessId(process)) : Collections.<Long>emptyList());
+            try {
+                stopServer(running ? TimeUnit.SECONDS.toMillis(timeout) : 0L);
+            } finally {
+                if (running) {
+                    final boolean exited = awaitExit(process, start + TimeUnit.SECONDS.toNanos(timeout));
+                    report.stageCompleted(Stage.GRACEFUL, System.nanoTime() - start);
+                    report.setStopped(exited || destroyProcess(report));
+                    reap(children, report);
+                    Metrics.INSTANCE.record(Metrics.SHUTDOWN, System.nanoTime() - start);
+                } else {
+                    report.setStopped(true);
                 }
             }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
+        return report;
     }
 
-
-    private int destroyProcess() {
-        if (process == null)
-            return 0;
+    /**
+     * Sends {@code SIGTERM} to the process, then kills the process if it does not exit in time.
+     *
+     * @return {@code true} if the process exited, otherwise {@code false}
+     */
+    private boolean destroyProcess(final ShutdownReport report) {
+        final Process process = this.process;
+        if (process == null) {
+            return true;
+        }
+        long start = System.nanoTime();
+        // Destroying the process sends SIGTERM on Unix
         process.destroy();
+        boolean exited = awaitExit(process, start + TimeUnit.MILLISECONDS.toNanos(TERMINATE_TIMEOUT));
+        report.stageCompleted(Stage.TERMINATE, System.nanoTime() - start);
+        if (!exited) {
+            start = System.nanoTime();
+            Processes.kill(Processes.getProcessId(process));
+            exited = awaitExit(process, start + TimeUnit.MILLISECONDS.toNanos(KILL_TIMEOUT));
+            report.stageCompleted(Stage.KILL, System.nanoTime() - start);
+        }
+        return exited;
+    }
+
+    /**
+     * Kills the child processes which are still running after the process exited.
+     */
+    private static void reap(final List<Long> children, final ShutdownReport report) {
+        if (children.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        int reaped = 0;
+        for (Long child : children) {
+            if (Processes.isAlive(child) && Processes.kill(child)) {
+                reaped++;
+            }
+        }
+        report.setReaped(reaped);
+        report.stageCompleted(Stage.REAP, System.nanoTime() - start);
+    }
+
+    /**
+     * Waits for the process to exit, checking at an increasing interval. An interrupt stops the wait early.
+     *
+     * @return {@code true} if the process exited, otherwise {@code false}
+     */
+    private static boolean awaitExit(final Process process, final long deadline) {
+        long sleep = 10L;
+        while (!processHasDied(process)) {
+            final long remaining = remaining(deadline);
+            if (remaining <= 0L) {
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(sleep, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return processHasDied(process);
+            }
+            sleep = Math.min(sleep * 2, 250L);
+        }
+        return true;
+    }
+
+    /**
+     * Executes the operation which shuts down the server waiting at most the timeout for the server to respond. The
+     * server may close the connection before it responds, so failures are ignored.
+     *
+     * @param client  the client to execute the operation with
+     * @param op      the shutdown operation
+     * @param timeout the maximum number of milliseconds to wait, the operation is not executed if 0 or less
+     */
+    protected static void executeShutdown(final ModelControllerClient client, final ModelNode op, final long timeout) {
+        if (timeout <= 0L) {
+            return;
+        }
+        final Future<ModelNode> future = client.executeAsync(op, null);
         try {
-            return process.waitFor();
+            future.get(timeout, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignore) {
+            // no-op
+        } catch (TimeoutException e) {
+            future.cancel(true);
         }
     }
 
+    private static long remaining(final long deadline) {
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
     private static boolean processHasDied(final Process process) {
         try {
             process.exitValue();
@@ -224,8 +433,8 @@ public abstract class Server {
         }
     }
 
-    private ConsoleConsumer startConsoleConsumer(final InputStream stream) {
-        final ConsoleConsumer result = new ConsoleConsumer(stream);
+    private ConsoleConsumer startConsoleConsumer(final InputStream stream, final BootMonitor monitor) {
+        final ConsoleConsumer result = new ConsoleConsumer(stream, monitor);
         final Thread t = new Thread(result);
         t.setName("AS7-Console");
         t.setDaemon(true);
@@ -235,32 +444,40 @@ public abstract class Server {
 
     /**
      * Runnable that consumes the output of the process.
-     *
-     * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
-     */
-    /**
-     * Runnable that consumes the output of the process.
+     * <p/>
+     * The buffer starts at {@value #MIN_CONSOLE_BUFFER} bytes and grows, up to {@value #MAX_CONSOLE_BUFFER} bytes, each
+     * time a read fills the buffer. Reads larger than the internal buffer of the process stream bypass that buffer,
+     * which keeps the pipe drained during heavy logging so the server is not blocked writing to it.
      *
      * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
      */
     class ConsoleConsumer implements Runnable {
 
         private final InputStream in;
+        private final BootMonitor monitor;
 
-        protected ConsoleConsumer(final InputStream in) {
+        protected ConsoleConsumer(final InputStream in, final BootMonitor monitor) {
             this.in = in;
+            this.monitor = monitor;
         }
 
         @Override
         public void run() {
 
             try {
-                byte[] buf = new byte[512];
+                byte[] buf = new byte[MIN_CONSOLE_BUFFER];
                 int num;
                 while ((num = in.read(buf)) != -1) {
+                    monitor.scan(buf, 0, num);
                     if (out != null) out.write(buf, 0, num);
+                    // A full buffer indicates the output is being produced faster than it's consumed
+                    if (num == buf.length && buf.length < MAX_CONSOLE_BUFFER) {
+                        buf = new byte[buf.length * 2];
+                    }
                 }
             } catch (IOException ignore) {
+            } finally {
+                monitor.consoleClosed();
             }
         }
 
@@ -25,6 +25,8 @@ package org.jboss.as.forge.server;
 import java.io.File;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
 import javax.security.auth.callback.CallbackHandler;
 
 import org.jboss.as.forge.util.Files;
@@ -45,6 +47,11 @@ public class ServerBuilder {
     private String javaHome;
     private int port;
     private String serverConfig;
+    private boolean domain;
+    private String hostConfig;
+    private File baseDir;
+    private int portOffset;
+    private ClassDataSharing classDataSharing;
 
     private ServerBuilder(final CallbackHandler callbackHandler, final File jbossHome, final boolean requiresLogModule) {
         this.callbackHandler = callbackHandler;
@@ -68,7 +75,10 @@ public class ServerBuilder {
         } else {
             jvmArgs = null;
         }
-        return new StandaloneServer(out, jbossHome, callbackHandler, modulesDir, bundlesDir, hostAddress, jvmArgs, javaHome, port, serverConfig, requiresLogModule);
+        if (domain) {
+            return new DomainServer(out, jbossHome, callbackHandler, modulesDir, hostAddress, jvmArgs, javaHome, port, serverConfig, hostConfig);
+        }
+        return new StandaloneServer(out, jbossHome, callbackHandler, modulesDir, bundlesDir, hostAddress, jvmArgs, javaHome, port, serverConfig, requiresLogModule, baseDir, portOffset, classDataSharing);
     }
 
     public ServerBuilder setModulesDir(final File modulesDir) {
@@ -110,4 +120,102 @@ public class ServerBuilder {
         this.serverConfig = serverConfig;
         return this;
     }
+
+    /**
+     * Sets whether a managed domain should be launched rather than a standalone server. For a domain the {@link
+     * #setServerConfig(String) server configuration} is used as the domain configuration.
+     *
+     * @param domain {@code true} to launch a managed domain
+     *
+     * @return this builder
+     */
+    public ServerBuilder setDomain(final boolean domain) {
+        this.domain = domain;
+        return this;
+    }
+
+    /**
+     * Sets the host configuration file, only used when launching a {@link #setDomain(boolean) managed domain}.
+     *
+     * @param hostConfig the host configuration file or {@code null} for the default
+     *
+     * @return this builder
+     */
+    public ServerBuilder setHostConfig(final String hostConfig) {
+        this.hostConfig = hostConfig;
+        return this;
+    }
+
+    /**
+     * Sets the base directory of a standalone server, which contains the configuration, data, deployments and logs of
+     * the server. This allows several servers to run from the same installation.
+     *
+     * @param baseDir the base directory or {@code null} for the {@code standalone} directory of the installation
+     *
+     * @return this builder
+     */
+    public ServerBuilder setBaseDir(final File baseDir) {
+        this.baseDir = baseDir;
+        return this;
+    }
+
+    /**
+     * Sets the offset added to all the ports of a standalone server, including the {@link #setPort(int) management
+     * port}.
+     *
+     * @param portOffset the port offset
+     *
+     * @return this builder
+     */
+    public ServerBuilder setPortOffset(final int portOffset) {
+        this.portOffset = portOffset;
+        return this;
+    }
+
+    /**
+     * Sets the class data sharing archive used to boot a standalone server.
+     *
+     * @param classDataSharing the class data sharing settings or {@code null} to not use class data sharing
+     *
+     * @return this builder
+     */
+    public ServerBuilder setClassDataSharing(final ClassDataSharing classDataSharing) {
+        this.classDataSharing = classDataSharing;
+        return this;
+    }
+
+    /**
+     * Checks whether the management port of a standalone server, including the {@link #setPortOffset(int) port
+     * offset}, already accepts connections, e.g. from a server started by another process.
+     *
+     * @return {@code true} if the management port is in use, otherwise {@code false}
+     */
+    public boolean isManagementPortInUse() {
+        return BootMonitor.isAccepting(new InetSocketAddress(hostAddress, port + portOffset));
+    }
+
+    /**
+     * Describes the settings which determine how the server is launched. The base directory, port offset and output
+     * are left out as they differ for each server launched from the same installation. Builders with the same
+     * description launch equivalent servers.
+     *
+     * @return the description of the launch settings
+     */
+    public String getLaunchSettings() {
+        final StringBuilder result = new StringBuilder();
+        result.append("home=").append(jbossHome.getAbsolutePath())
+                .append(",java-home=").append(javaHome)
+                .append(",jvm-args=").append(jvmArgs == null ? "" : Arrays.toString(jvmArgs))
+                .append(",modules-dir=").append(modulesDir)
+                .append(",bundles-dir=").append(bundlesDir)
+                .append(",host=").append(hostAddress)
+                .append(",port=").append(port)
+                .append(",server-config=").append(serverConfig)
+                .append(",domain=").append(domain)
+                .append(",host-config=").append(hostConfig)
+                .append(",log-module=").append(requiresLogModule)
+                // The archive arguments change once the archive is recorded, only whether it is used matters
+                .append(",cds=").append(classDataSharing != null && classDataSharing.isSupported());
+        return result.toString();
+    }
 }
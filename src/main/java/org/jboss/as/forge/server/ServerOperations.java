@@ -41,11 +41,18 @@ import org.jboss.dmr.ModelNode;
 public class ServerOperations extends Operations {
 
     public static final String READ_CHILDREN_NAMES = "read-children-names";
+    public static final String READ_CHILDREN_RESOURCES = "read-children-resources";
     public static final String RELOAD = "reload";
+    public static final String SHUTDOWN = "shutdown";
 
     public static final ModelNode READ_STATE_OP = ServerOperations.createReadAttributeOperation("server-state");
 
-    public static final ModelNode  SHUTDOWN_OP = ServerOperations.createOperation("shutdown");
+    /**
+     * Reads the launch type, {@code DOMAIN} for a domain controller which has no server state.
+     */
+    public static final ModelNode READ_LAUNCH_TYPE_OP = ServerOperations.createReadAttributeOperation("launch-type");
+
+    public static final ModelNode  SHUTDOWN_OP = ServerOperations.createOperation(SHUTDOWN);
 
     /**
      * Parses the result and returns the failure description.
@@ -98,6 +105,18 @@ public class ServerOperations extends Operations {
         return op;
     }
 
+    /**
+     * Creates an operation to read the resources of all the deployments, including the content hashes and whether or
+     * not the deployments are enabled.
+     *
+     * @return the operation
+     */
+    public static ModelNode createReadDeploymentsOperation() {
+        final ModelNode op = createOperation(READ_CHILDREN_RESOURCES);
+        op.get(ClientConstants.CHILD_TYPE).set(ClientConstants.DEPLOYMENT);
+        return op;
+    }
+
     /**
      * Reads the result of an operation and returns the result as a string. If the operation does not have a {@link
      * ClientConstants#RESULT} attribute and empty string is returned.
@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stages executed to stop a server and the time each stage took.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class ShutdownReport {
+
+    public static enum Stage {
+        /**
+         * The server was asked to shut down with a management operation.
+         */
+        GRACEFUL("graceful"),
+        /**
+         * The server process was sent {@code SIGTERM}.
+         */
+        TERMINATE("SIGTERM"),
+        /**
+         * The server process was killed.
+         */
+        KILL("SIGKILL"),
+        /**
+         * Child processes which outlived the server process were killed.
+         */
+        REAP("reap");
+
+        private final String stringForm;
+
+        private Stage(final String stringForm) {
+            this.stringForm = stringForm;
+        }
+
+        @Override
+        public String toString() {
+            return stringForm;
+        }
+    }
+
+    private final Map<Stage, Long> stages = new EnumMap<Stage, Long>(Stage.class);
+    private boolean stopped;
+    private int reaped;
+
+    ShutdownReport() {
+    }
+
+    void stageCompleted(final Stage stage, final long nanos) {
+        stages.put(stage, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    void setStopped(final boolean stopped) {
+        this.stopped = stopped;
+    }
+
+    void setReaped(final int reaped) {
+        this.reaped = reaped;
+    }
+
+    /**
+     * Returns the time, in milliseconds, each executed stage took in the order the stages were executed.
+     *
+     * @return the executed stages
+     */
+    public Map<Stage, Long> getStages() {
+        return Collections.unmodifiableMap(stages);
+    }
+
+    /**
+     * Returns the total time, in milliseconds, the shutdown took.
+     *
+     * @return the total time
+     */
+    public long getTotalTime() {
+        long result = 0L;
+        for (Long time : stages.values()) {
+            result += time;
+        }
+        return result;
+    }
+
+    /**
+     * Indicates whether the server process exited.
+     *
+     * @return {@code true} if the process exited, {@code false} if the process could not be stopped
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns the number of child processes which were killed after the server process exited.
+     *
+     * @return the number of killed child processes
+     */
+    public int getReaped() {
+        return reaped;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder();
+        for (Map.Entry<Stage, Long> entry : stages.entrySet()) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(entry.getKey()).append(' ').append(entry.getValue()).append(" ms");
+            if (entry.getKey() == Stage.REAP) {
+                result.append(" (").append(reaped).append(')');
+            }
+        }
+        return result.toString();
+    }
+}
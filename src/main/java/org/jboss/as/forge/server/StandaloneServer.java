@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -57,12 +58,16 @@ final class StandaloneServer extends Server {
     private final int port;
     private final String serverConfig;
     private final boolean requiresLogModule;
+    private final File baseDir;
+    private final int portOffset;
+    private final ClassDataSharing classDataSharing;
     private boolean isRunning;
     private ModelControllerClient client;
 
     StandaloneServer(final OutputStream out, final File jbossHome, final CallbackHandler callbackHandler, final File modulesDir,
                      final File bundlesDir, final InetAddress hostAddress, final String[] jvmArgs,
-                     final String javaHome, final int port, final String serverConfig, final boolean requiresLogModule) {
+                     final String javaHome, final int port, final String serverConfig, final boolean requiresLogModule,
+                     final File baseDir, final int portOffset, final ClassDataSharing classDataSharing) {
         super(out);
         this.jbossHome = jbossHome;
         this.callbackHandler = callbackHandler;
@@ -74,22 +79,23 @@ final class StandaloneServer extends Server {
         this.port = port;
         this.serverConfig = serverConfig;
         this.requiresLogModule = requiresLogModule;
+        this.baseDir = baseDir;
+        this.portOffset = portOffset;
+        this.classDataSharing = classDataSharing;
         isRunning = false;
     }
 
     @Override
     protected void init() throws IOException {
-        client = ModelControllerClient.Factory.create(hostAddress, port, callbackHandler);
+        client = ModelControllerClient.Factory.create(hostAddress, port + portOffset, callbackHandler);
     }
 
     @Override
-    protected void stopServer() {
+    protected void stopServer(final long timeout) {
         try {
             if (client != null) {
                 try {
-                    client.execute(ServerOperations.SHUTDOWN_OP);
-                } catch (IOException e) {
-                    // no-op
+                    executeShutdown(client, ServerOperations.SHUTDOWN_OP, timeout);
                 } finally {
                     Streams.safeClose(client);
                     client = null;
@@ -110,6 +116,11 @@ final class StandaloneServer extends Server {
         return client;
     }
 
+    @Override
+    protected InetSocketAddress getManagementAddress() {
+        return new InetSocketAddress(hostAddress, port + portOffset);
+    }
+
     @Override
     protected List<String> createLaunchCommand() {
         final File modulesJar = new File(Files.createPath(jbossHome.getAbsolutePath(), "jboss-modules.jar"));
@@ -126,10 +137,22 @@ final class StandaloneServer extends Server {
         if (jvmArgs != null) {
             Collections.addAll(cmd, jvmArgs);
         }
+        if (classDataSharing != null) {
+            cmd.addAll(classDataSharing.getJvmArgs());
+        }
 
         cmd.add("-Djboss.home.dir=" + jbossHome);
-        cmd.add("-Dorg.jboss.boot.log.file=" + jbossHome + "/standalone/log/boot.log");
-        cmd.add("-Dlogging.configuration=file:" + jbossHome + CONFIG_PATH + "logging.properties");
+        if (baseDir == null) {
+            cmd.add("-Dorg.jboss.boot.log.file=" + jbossHome + "/standalone/log/boot.log");
+            cmd.add("-Dlogging.configuration=file:" + jbossHome + CONFIG_PATH + "logging.properties");
+        } else {
+            cmd.add("-Djboss.server.base.dir=" + baseDir.getAbsolutePath());
+            cmd.add("-Dorg.jboss.boot.log.file=" + baseDir.getAbsolutePath() + "/log/boot.log");
+            cmd.add("-Dlogging.configuration=file:" + baseDir.getAbsolutePath() + "/configuration/logging.properties");
+        }
+        if (portOffset != 0) {
+            cmd.add("-Djboss.socket.binding.port-offset=" + portOffset);
+        }
         cmd.add("-Djboss.modules.dir=" + modulesDir.getAbsolutePath());
         cmd.add("-Djboss.bundles.dir=" + bundlesDir.getAbsolutePath());
         cmd.add("-jar");
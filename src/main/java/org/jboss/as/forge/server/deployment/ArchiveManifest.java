@@ -0,0 +1,213 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jboss.as.forge.util.Streams;
+
+/**
+ * A manifest of the entries of an archive. Each entry is identified by the size and the CRC-32 checksum recorded in
+ * the archive, which means creating a manifest only reads the central directory of the archive and does not require
+ * the entries to be decompressed.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class ArchiveManifest {
+
+    /**
+     * A manifest without any entries.
+     */
+    public static final ArchiveManifest EMPTY = new ArchiveManifest(Collections.<String, String>emptyMap(), 0L);
+
+    private final Map<String, String> entries;
+    private final long totalSize;
+
+    private ArchiveManifest(final Map<String, String> entries, final long totalSize) {
+        this.entries = entries;
+        this.totalSize = totalSize;
+    }
+
+    /**
+     * Creates a manifest of the entries of the archive. Directory entries are ignored.
+     *
+     * @param archive the archive
+     *
+     * @return the manifest
+     *
+     * @throws IOException if the archive could not be read
+     */
+    public static ArchiveManifest of(final File archive) throws IOException {
+        final Map<String, String> entries = new TreeMap<String, String>();
+        long totalSize = 0L;
+        final ZipFile zipFile = new ZipFile(archive);
+        try {
+            final Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                final ZipEntry entry = zipEntries.nextElement();
+                if (!entry.isDirectory()) {
+                    entries.put(entry.getName(), String.format("%d,%x", entry.getSize(), entry.getCrc()));
+                    totalSize += Math.max(0L, entry.getSize());
+                }
+            }
+        } finally {
+            Streams.safeClose(zipFile);
+        }
+        return new ArchiveManifest(entries, totalSize);
+    }
+
+    /**
+     * Loads a manifest previously {@link #store(java.io.File) stored}.
+     *
+     * @param file the file the manifest was stored in
+     *
+     * @return the manifest or {@link #EMPTY} if the file does not exist
+     *
+     * @throws IOException if the file could not be read
+     */
+    public static ArchiveManifest load(final File file) throws IOException {
+        if (!file.isFile()) {
+            return EMPTY;
+        }
+        final Properties properties = new Properties();
+        final InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            Streams.safeClose(in);
+        }
+        final Map<String, String> entries = new TreeMap<String, String>();
+        long totalSize = 0L;
+        for (String name : properties.stringPropertyNames()) {
+            final String value = properties.getProperty(name);
+            entries.put(name, value);
+            final int index = value.indexOf(',');
+            if (index > 0) {
+                totalSize += Math.max(0L, Long.parseLong(value.substring(0, index)));
+            }
+        }
+        return new ArchiveManifest(entries, totalSize);
+    }
+
+    /**
+     * Stores the manifest in the file.
+     *
+     * @param file the file to store the manifest in
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void store(final File file) throws IOException {
+        final Properties properties = new Properties();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue());
+        }
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, null);
+        } finally {
+            Streams.safeClose(out);
+        }
+    }
+
+    /**
+     * Returns the names of the entries that were added or changed since the previous manifest.
+     *
+     * @param previous the previous manifest
+     *
+     * @return the names of the changed entries
+     */
+    public Set<String> getChangedEntries(final ArchiveManifest previous) {
+        final Set<String> result = new LinkedHashSet<String>();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            if (!entry.getValue().equals(previous.entries.get(entry.getKey()))) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the names of the entries in the previous manifest that no longer exist.
+     *
+     * @param previous the previous manifest
+     *
+     * @return the names of the removed entries
+     */
+    public Set<String> getRemovedEntries(final ArchiveManifest previous) {
+        final Set<String> result = new LinkedHashSet<String>();
+        for (String name : previous.entries.keySet()) {
+            if (!entries.containsKey(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of entries in the manifest.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the uncompressed size of all the entries.
+     *
+     * @return the total size in bytes
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return entries.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof ArchiveManifest)) {
+            return false;
+        }
+        return entries.equals(((ArchiveManifest) obj).entries);
+    }
+}
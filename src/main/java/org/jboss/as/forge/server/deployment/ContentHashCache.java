@@ -0,0 +1,175 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.jboss.as.forge.util.Files;
+import org.jboss.as.forge.util.Streams;
+
+/**
+ * A persistent cache of the SHA-1 hashes of deployment content. The server identifies managed deployment content by
+ * the SHA-1 hash of the content, comparing the hashes allows deployments of identical content to be skipped.
+ * <p/>
+ * Hashes are cached by the path, size and modification time of the file so a file is only hashed again once it
+ * changes.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class ContentHashCache {
+
+    public static final ContentHashCache INSTANCE = new ContentHashCache(new File(System.getProperty("user.home"),
+            Files.createPath(".forge", "jboss-as", "content-hashes.properties")));
+
+    private static final String ALGORITHM = "SHA-1";
+    private static final int MAX_ENTRIES = 500;
+
+    private final File file;
+    // Guarded by this
+    private Properties hashes;
+
+    ContentHashCache(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the SHA-1 hash of the content, calculating the hash only if the file changed since it was last hashed.
+     *
+     * @param content the content to hash
+     *
+     * @return the hash
+     *
+     * @throws IOException if the file could not be read
+     */
+    public synchronized byte[] getHash(final File content) throws IOException {
+        final Properties hashes = load();
+        final String key = content.getCanonicalPath();
+        final String prefix = String.format("%d,%d,", content.length(), content.lastModified());
+        final String cached = hashes.getProperty(key);
+        if (cached != null && cached.startsWith(prefix)) {
+            return fromHex(cached.substring(prefix.length()));
+        }
+        final byte[] hash = hash(content);
+        if (hashes.size() >= MAX_ENTRIES && !hashes.containsKey(key)) {
+            // Start over rather than growing without bounds
+            hashes.clear();
+        }
+        hashes.setProperty(key, prefix + toHex(hash));
+        store(hashes);
+        return hash;
+    }
+
+    /**
+     * Checks whether the content has the hash.
+     *
+     * @param content the content
+     * @param hash    the hash to compare the content to
+     *
+     * @return {@code true} if the hash of the content matches the hash, otherwise {@code false}
+     *
+     * @throws IOException if the file could not be read
+     */
+    public boolean matches(final File content, final byte[] hash) throws IOException {
+        return hash != null && Arrays.equals(getHash(content), hash);
+    }
+
+    private Properties load() {
+        if (hashes == null) {
+            hashes = new Properties();
+            if (file.isFile()) {
+                InputStream in = null;
+                try {
+                    in = new FileInputStream(file);
+                    hashes.load(in);
+                } catch (IOException ignore) {
+                    // Start with an empty cache
+                    hashes.clear();
+                } finally {
+                    Streams.safeClose(in);
+                }
+            }
+        }
+        return hashes;
+    }
+
+    private void store(final Properties hashes) {
+        final File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            return;
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            hashes.store(out, null);
+        } catch (IOException ignore) {
+            // The cache is only an optimization
+        } finally {
+            Streams.safeClose(out);
+        }
+    }
+
+    private static byte[] hash(final File content) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final InputStream in = new FileInputStream(content);
+        try {
+            final byte[] buffer = new byte[65536];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, len);
+            }
+        } finally {
+            Streams.safeClose(in);
+        }
+        return digest.digest();
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b & 0xFF));
+        }
+        return result.toString();
+    }
+
+    private static byte[] fromHex(final String hex) {
+        final byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return result;
+    }
+}
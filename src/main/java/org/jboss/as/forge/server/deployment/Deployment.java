@@ -37,7 +37,15 @@ public interface Deployment {
 
     public enum Status {
         SUCCESS,
-        REQUIRES_RESTART
+        REQUIRES_RESTART,
+        /**
+         * The deployment was executed and the server reported that it requires a reload.
+         */
+        REQUIRES_RELOAD,
+        /**
+         * The deployment was not executed as the server already runs identical content.
+         */
+        UNCHANGED
     }
 
     /**
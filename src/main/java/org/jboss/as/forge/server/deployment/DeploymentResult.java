@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment;
+
+import org.jboss.as.forge.server.deployment.Deployment.Status;
+import org.jboss.as.forge.server.deployment.Deployment.Type;
+
+/**
+ * The result of a single deployment within a batch of deployments.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class DeploymentResult {
+
+    private final String name;
+    private final Type type;
+    private final Status status;
+    private final String failureMessage;
+    private final Throwable failure;
+
+    private DeploymentResult(final String name, final Type type, final Status status, final String failureMessage, final Throwable failure) {
+        this.name = name;
+        this.type = type;
+        this.status = status;
+        this.failureMessage = failureMessage;
+        this.failure = failure;
+    }
+
+    /**
+     * Creates a successful result.
+     *
+     * @param name   the name of the deployment
+     * @param type   the deployment type
+     * @param status the status of the deployment
+     *
+     * @return the result
+     */
+    public static DeploymentResult success(final String name, final Type type, final Status status) {
+        return new DeploymentResult(name, type, status, null, null);
+    }
+
+    /**
+     * Creates a failed result.
+     *
+     * @param name           the name of the deployment
+     * @param type           the deployment type
+     * @param failureMessage a message describing the failure
+     * @param failure        the cause of the failure, may be {@code null}
+     *
+     * @return the result
+     */
+    public static DeploymentResult failed(final String name, final Type type, final String failureMessage, final Throwable failure) {
+        return new DeploymentResult(name, type, null, failureMessage, failure);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the status of the deployment or {@code null} if the deployment failed.
+     *
+     * @return the status or {@code null}
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSuccessful() {
+        return status != null;
+    }
+
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        if (isSuccessful()) {
+            return String.format("%s (%s): %s", name, type, status);
+        }
+        if (failure != null && failure.getLocalizedMessage() != null) {
+            return String.format("%s (%s): %s: %s", name, type, failureMessage, failure.getLocalizedMessage());
+        }
+        return String.format("%s (%s): %s", name, type, failureMessage);
+    }
+}
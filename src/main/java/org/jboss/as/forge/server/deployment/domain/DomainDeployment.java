@@ -0,0 +1,321 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment.domain;
+
+import static org.jboss.as.controller.client.helpers.ClientConstants.CONTENT;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_DEPLOY_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_FULL_REPLACE_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_REMOVE_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_UNDEPLOY_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.INPUT_STREAM_INDEX;
+import static org.jboss.as.controller.client.helpers.ClientConstants.NAME;
+import static org.jboss.as.controller.client.helpers.ClientConstants.OPERATION_HEADERS;
+import static org.jboss.as.controller.client.helpers.ClientConstants.OP_ADDR;
+import static org.jboss.as.controller.client.helpers.ClientConstants.READ_RESOURCE_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.ROLLOUT_PLAN;
+import static org.jboss.as.controller.client.helpers.ClientConstants.SERVER_GROUP;
+import static org.jboss.as.controller.client.helpers.ClientConstants.STEPS;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.OperationBuilder;
+import org.jboss.as.forge.server.Metrics;
+import org.jboss.as.forge.server.ServerOperations;
+import org.jboss.as.forge.server.deployment.ContentHashCache;
+import org.jboss.as.forge.server.deployment.Deployment;
+import org.jboss.as.forge.server.deployment.DeploymentFailedException;
+import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Streams;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A deployment to one or more server groups of a managed domain.
+ * <p/>
+ * The content is uploaded once, to the domain controller, as part of a single composite operation which also adds
+ * and deploys the content to each server group. The operation carries a rollout plan with all the server groups in a
+ * single set of concurrent groups, so the domain controller deploys to the server groups in parallel and rolls back
+ * every server group if any of them fails.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class DomainDeployment implements Deployment {
+
+    private static final String CONCURRENT_GROUPS = "concurrent-groups";
+    private static final String ENABLED = "enabled";
+    private static final String HASH = "hash";
+    private static final String IN_SERIES = "in-series";
+    private static final String ROLLBACK_ACROSS_GROUPS = "rollback-across-groups";
+    private static final String ROLLING_TO_SERVERS = "rolling-to-servers";
+    private static final int BUFFER_SIZE = 65536;
+
+    private final File content;
+    private final ModelControllerClient client;
+    private final String name;
+    private final Type type;
+    private final Set<String> serverGroups;
+    private final Messages messages = Messages.INSTANCE;
+
+    /**
+     * Creates a new deployment.
+     *
+     * @param client       the client connected to the domain controller.
+     * @param content      the content for the deployment.
+     * @param name         the name of the deployment, if {@code null} the name of the content file is used.
+     * @param type         the deployment type.
+     * @param serverGroups the server groups to deploy to.
+     */
+    public DomainDeployment(final ModelControllerClient client, final File content, final String name, final Type type, final Collection<String> serverGroups) {
+        if (serverGroups == null || serverGroups.isEmpty()) {
+            throw new IllegalArgumentException(Messages.INSTANCE.getMessage("deployment.server.groups.none"));
+        }
+        this.content = content;
+        this.client = client;
+        this.name = (name == null ? content.getName() : name);
+        this.type = type;
+        this.serverGroups = new LinkedHashSet<String>(serverGroups);
+    }
+
+    /**
+     * Creates a new deployment.
+     *
+     * @param client       the client connected to the domain controller.
+     * @param content      the content for the deployment.
+     * @param name         the name of the deployment, if {@code null} the name of the content file is used.
+     * @param type         the deployment type.
+     * @param serverGroups the server groups to deploy to.
+     *
+     * @return the new deployment
+     */
+    public static DomainDeployment create(final ModelControllerClient client, final File content, final String name, final Type type, final Collection<String> serverGroups) {
+        return new DomainDeployment(client, content, name, type, serverGroups);
+    }
+
+    @Override
+    public Status execute() throws DeploymentFailedException {
+        final long start = System.nanoTime();
+        try {
+            final Status status = executeOnServerGroups();
+            Metrics.INSTANCE.record(Metrics.getName(type), System.nanoTime() - start);
+            return status;
+        } catch (DeploymentFailedException e) {
+            Metrics.INSTANCE.recordFailure(Metrics.getName(type));
+            throw e;
+        }
+    }
+
+    private Status executeOnServerGroups() throws DeploymentFailedException {
+        InputStream in = null;
+        try {
+            final ModelNode deployment = readDeployment();
+            // Only read the server groups if the content is known to the domain
+            final Map<String, ModelNode> deployed = (deployment == null ? new LinkedHashMap<String, ModelNode>() : readServerGroupDeployments());
+            if (isUnchanged(deployment, deployed)) {
+                return Status.UNCHANGED;
+            }
+            final ModelNode op = ServerOperations.createCompositeOperation();
+            final ModelNode steps = op.get(STEPS);
+            final Set<String> affectedGroups = new LinkedHashSet<String>(serverGroups);
+            switch (type) {
+                case DEPLOY: {
+                    steps.add(createAddOperation());
+                    addServerGroupSteps(steps, deployed);
+                    break;
+                }
+                case FORCE_DEPLOY:
+                case REDEPLOY: {
+                    if (deployment == null && type == Type.FORCE_DEPLOY) {
+                        steps.add(createAddOperation());
+                    } else {
+                        // Replacing the content redeploys it on every server group it's deployed to
+                        steps.add(createReplaceOperation());
+                        affectedGroups.addAll(deployed.keySet());
+                    }
+                    addServerGroupSteps(steps, deployed);
+                    break;
+                }
+                case UNDEPLOY:
+                case UNDEPLOY_IGNORE_MISSING: {
+                    if (deployment == null && type == Type.UNDEPLOY_IGNORE_MISSING) {
+                        return Status.SUCCESS;
+                    }
+                    boolean removeContent = true;
+                    for (String serverGroup : deployed.keySet()) {
+                        if (serverGroups.contains(serverGroup)) {
+                            final ModelNode address = ServerOperations.createAddress(SERVER_GROUP, serverGroup, DEPLOYMENT, name);
+                            steps.add(ServerOperations.createOperation(DEPLOYMENT_UNDEPLOY_OPERATION, address));
+                            steps.add(ServerOperations.createOperation(DEPLOYMENT_REMOVE_OPERATION, address));
+                        } else {
+                            // The content is still used by another server group
+                            removeContent = false;
+                        }
+                    }
+                    if (removeContent) {
+                        steps.add(ServerOperations.createOperation(DEPLOYMENT_REMOVE_OPERATION, ServerOperations.createAddress(DEPLOYMENT, name)));
+                    }
+                    affectedGroups.retainAll(deployed.keySet());
+                    break;
+                }
+            }
+            if (!affectedGroups.isEmpty()) {
+                op.get(OPERATION_HEADERS, ROLLOUT_PLAN).set(createRolloutPlan(affectedGroups));
+            }
+            final OperationBuilder builder = OperationBuilder.create(op);
+            if (type == Type.DEPLOY || type == Type.FORCE_DEPLOY || type == Type.REDEPLOY) {
+                in = new BufferedInputStream(new FileInputStream(content), BUFFER_SIZE);
+                builder.addInputStream(in);
+            }
+            final ModelNode result = client.execute(builder.build());
+            if (!ServerOperations.isSuccessfulOutcome(result)) {
+                throw new DeploymentFailedException(messages.getMessage("deployment.failed") + " " + ServerOperations.getFailureDescriptionAsString(result));
+            }
+            return Status.SUCCESS;
+        } catch (IOException e) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.error.executing", type), e);
+        } finally {
+            Streams.safeClose(in);
+        }
+    }
+
+    @Override
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the name of the deployment.
+     *
+     * @return the name of the deployment
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds the steps which add and deploy the content to the server groups. Server groups which already have the
+     * deployment only deploy it if it's not enabled.
+     */
+    private void addServerGroupSteps(final ModelNode steps, final Map<String, ModelNode> deployed) {
+        for (String serverGroup : serverGroups) {
+            final ModelNode address = ServerOperations.createAddress(SERVER_GROUP, serverGroup, DEPLOYMENT, name);
+            final ModelNode current = deployed.get(serverGroup);
+            if (current == null) {
+                steps.add(ServerOperations.createAddOperation(address));
+                steps.add(ServerOperations.createOperation(DEPLOYMENT_DEPLOY_OPERATION, address));
+            } else if (!current.hasDefined(ENABLED) || !current.get(ENABLED).asBoolean()) {
+                steps.add(ServerOperations.createOperation(DEPLOYMENT_DEPLOY_OPERATION, address));
+            }
+        }
+    }
+
+    private ModelNode createAddOperation() {
+        final ModelNode op = ServerOperations.createAddOperation(ServerOperations.createAddress(DEPLOYMENT, name));
+        op.get(CONTENT).add().get(INPUT_STREAM_INDEX).set(0);
+        return op;
+    }
+
+    private ModelNode createReplaceOperation() {
+        final ModelNode op = ServerOperations.createOperation(DEPLOYMENT_FULL_REPLACE_OPERATION);
+        op.get(NAME).set(name);
+        op.get(CONTENT).add().get(INPUT_STREAM_INDEX).set(0);
+        return op;
+    }
+
+    /**
+     * Creates a rollout plan which deploys to all the server groups, and all the servers of each server group, at the
+     * same time.
+     */
+    private static ModelNode createRolloutPlan(final Collection<String> serverGroups) {
+        final ModelNode plan = new ModelNode();
+        final ModelNode groups = plan.get(IN_SERIES).add().get(CONCURRENT_GROUPS);
+        for (String serverGroup : serverGroups) {
+            groups.get(serverGroup).get(ROLLING_TO_SERVERS).set(false);
+        }
+        plan.get(ROLLBACK_ACROSS_GROUPS).set(true);
+        return plan;
+    }
+
+    /**
+     * Checks whether the deployment would replace identical content which is already deployed to every server group.
+     * Only forced deployments are considered, a redeploy always restarts the deployment.
+     */
+    private boolean isUnchanged(final ModelNode deployment, final Map<String, ModelNode> deployed) throws IOException {
+        if (type != Type.FORCE_DEPLOY || deployment == null || !deployment.hasDefined(CONTENT)) {
+            return false;
+        }
+        for (String serverGroup : serverGroups) {
+            final ModelNode current = deployed.get(serverGroup);
+            if (current == null || !current.hasDefined(ENABLED) || !current.get(ENABLED).asBoolean()) {
+                return false;
+            }
+        }
+        final ModelNode deployedContent = deployment.get(CONTENT).get(0);
+        return deployedContent.hasDefined(HASH) && ContentHashCache.INSTANCE.matches(content, deployedContent.get(HASH).asBytes());
+    }
+
+    /**
+     * Reads the deployment from the content of the domain.
+     *
+     * @return the deployment resource or {@code null} if the deployment does not exist
+     */
+    private ModelNode readDeployment() throws IOException {
+        // CLI /deployment=name:read-resource
+        final ModelNode op = ServerOperations.createOperation(READ_RESOURCE_OPERATION, ServerOperations.createAddress(DEPLOYMENT, name));
+        final ModelNode result = client.execute(op);
+        return (ServerOperations.isSuccessfulOutcome(result) ? ServerOperations.readResult(result) : null);
+    }
+
+    /**
+     * Reads the deployment from every server group it's deployed to in a single operation.
+     *
+     * @return the deployment resources keyed by the name of the server group
+     */
+    private Map<String, ModelNode> readServerGroupDeployments() throws IOException {
+        // CLI /server-group=*/deployment=name:read-resource
+        final ModelNode op = ServerOperations.createOperation(READ_RESOURCE_OPERATION, ServerOperations.createAddress(SERVER_GROUP, "*", DEPLOYMENT, name));
+        final ModelNode result = client.execute(op);
+        final Map<String, ModelNode> deployments = new LinkedHashMap<String, ModelNode>();
+        if (ServerOperations.isSuccessfulOutcome(result)) {
+            final ModelNode resources = ServerOperations.readResult(result);
+            if (resources.isDefined()) {
+                for (ModelNode resource : resources.asList()) {
+                    if (ServerOperations.isSuccessfulOutcome(resource)) {
+                        final String serverGroup = resource.get(OP_ADDR).get(0).get(SERVER_GROUP).asString();
+                        deployments.put(serverGroup, ServerOperations.readResult(resource));
+                    }
+                }
+            }
+        }
+        return deployments;
+    }
+}
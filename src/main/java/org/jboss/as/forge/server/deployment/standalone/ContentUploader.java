@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment.standalone;
+
+import static org.jboss.as.controller.client.helpers.ClientConstants.CONTENT;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_DEPLOY_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_FULL_REPLACE_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.INPUT_STREAM_INDEX;
+import static org.jboss.as.controller.client.helpers.ClientConstants.NAME;
+import static org.jboss.as.controller.client.helpers.ClientConstants.STEPS;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.OperationBuilder;
+import org.jboss.as.forge.server.ServerOperations;
+import org.jboss.as.forge.server.deployment.ContentHashCache;
+import org.jboss.as.forge.server.deployment.DeploymentFailedException;
+import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Streams;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Uploads deployment content to the content repository of the server separately from the deployment operation.
+ * <p/>
+ * The content is streamed to the server, the management protocol splits the stream into chunks, and the hash the
+ * server calculates for the stored content is verified against the SHA-1 hash of the local content. A failed or
+ * corrupted upload is retried. The management protocol does not allow partial uploads to be resumed, so each attempt
+ * uploads the whole content. Once uploaded, the deployment operation only refers to the content by its hash which
+ * means a failure deploying the content does not require the content to be uploaded again.
+ * <p/>
+ * The management API has no operation to remove content from the repository, so content uploaded for a deployment
+ * which then fails is left behind in the repository of the server. Deploying the same content again reuses it.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class ContentUploader {
+
+    static final String UPLOAD_DEPLOYMENT_STREAM = "upload-deployment-stream";
+    static final int MAX_ATTEMPTS = 3;
+
+    private static final String ENABLED = "enabled";
+    private static final String HASH = "hash";
+    private static final int BUFFER_SIZE = 65536;
+    // The failure description codes of an unknown operation in 7.1 and later, 7.0 only reports the message
+    private static final String[] UNKNOWN_OPERATION_FAILURES = {"JBAS014884", "No operation named"};
+    private static final long RETRY_DELAY = 1000L;
+
+    private final ModelControllerClient client;
+    private final DeploymentHandle handle;
+    private final Messages messages = Messages.INSTANCE;
+
+    ContentUploader(final ModelControllerClient client, final DeploymentHandle handle) {
+        this.client = client;
+        this.handle = handle;
+    }
+
+    /**
+     * Uploads the content to the content repository of the server.
+     *
+     * @param content the content to upload
+     *
+     * @return the verified hash of the content or {@code null} if the server does not know the upload operation, in
+     *         which case the content must be uploaded with the deployment operation
+     *
+     * @throws IOException               if the content could not be read or uploaded after all attempts
+     * @throws InterruptedException      if the upload was interrupted
+     * @throws DeploymentFailedException if the server rejects the upload or reports a different hash after all
+     *                                   attempts
+     */
+    byte[] upload(final File content) throws IOException, InterruptedException, DeploymentFailedException {
+        final byte[] expected = ContentHashCache.INSTANCE.getHash(content);
+        IOException lastFailure = null;
+        byte[] lastHash = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (attempt > 1) {
+                // Back off before each retry
+                TimeUnit.MILLISECONDS.sleep(RETRY_DELAY * (attempt - 1));
+            }
+            final InputStream in = handle.track(new BufferedInputStream(new FileInputStream(content), BUFFER_SIZE), content.length(), attempt > 1);
+            try {
+                final ModelNode op = ServerOperations.createOperation(UPLOAD_DEPLOYMENT_STREAM);
+                op.get(INPUT_STREAM_INDEX).set(0);
+                final Future<ModelNode> future = client.executeAsync(OperationBuilder.create(op).addInputStream(in).build(), null);
+                handle.submitted(future);
+                final ModelNode result = future.get();
+                if (!ServerOperations.isSuccessfulOutcome(result)) {
+                    final String failure = ServerOperations.getFailureDescriptionAsString(result);
+                    if (isUnknownOperation(failure)) {
+                        return null;
+                    }
+                    // e.g. the user is not authorized or the server could not store the content
+                    throw new DeploymentFailedException(messages.getMessage("deployment.upload.failed", content.getName(), failure));
+                }
+                lastHash = ServerOperations.readResult(result).asBytes();
+                if (Arrays.equals(expected, lastHash)) {
+                    return lastHash;
+                }
+            } catch (ExecutionException e) {
+                lastFailure = (e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()));
+            } finally {
+                Streams.safeClose(in);
+            }
+        }
+        if (lastHash != null) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.upload.checksum", content.getName(), MAX_ATTEMPTS));
+        }
+        throw lastFailure;
+    }
+
+    private static boolean isUnknownOperation(final String failure) {
+        for (String unknown : UNKNOWN_OPERATION_FAILURES) {
+            if (failure.contains(unknown)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates an operation which adds and deploys content already in the content repository.
+     *
+     * @param name the name of the deployment
+     * @param hash the hash of the content
+     *
+     * @return the operation
+     */
+    static ModelNode createAddOperation(final String name, final byte[] hash) {
+        final ModelNode address = ServerOperations.createAddress(DEPLOYMENT, name);
+        final ModelNode op = ServerOperations.createCompositeOperation();
+        final ModelNode steps = op.get(STEPS);
+        final ModelNode add = ServerOperations.createAddOperation(address);
+        add.get(CONTENT).add().get(HASH).set(hash);
+        steps.add(add);
+        steps.add(ServerOperations.createOperation(DEPLOYMENT_DEPLOY_OPERATION, address));
+        return op;
+    }
+
+    /**
+     * Creates an operation which replaces the content of an existing deployment with content already in the content
+     * repository and deploys it.
+     *
+     * @param name the name of the deployment
+     * @param hash the hash of the content
+     *
+     * @return the operation
+     */
+    static ModelNode createReplaceOperation(final String name, final byte[] hash) {
+        final ModelNode op = ServerOperations.createOperation(DEPLOYMENT_FULL_REPLACE_OPERATION);
+        op.get(NAME).set(name);
+        op.get(CONTENT).add().get(HASH).set(hash);
+        op.get(ENABLED).set(true);
+        return op;
+    }
+}
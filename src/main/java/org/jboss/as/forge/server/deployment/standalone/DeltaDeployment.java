@@ -0,0 +1,285 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment.standalone;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.forge.server.Metrics;
+import org.jboss.as.forge.server.ServerOperations;
+import org.jboss.as.forge.server.deployment.ArchiveManifest;
+import org.jboss.as.forge.server.deployment.Deployment;
+import org.jboss.as.forge.server.deployment.DeploymentFailedException;
+import org.jboss.as.forge.util.Files;
+import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Streams;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A deployment for standalone servers on the local machine which only writes the entries of the archive that changed
+ * since the last deployment.
+ * <p/>
+ * The archive is deployed as an unmanaged exploded deployment from a staging directory. On subsequent deployments the
+ * entries of the archive are compared with a manifest of the previously deployed archive, only the added and changed
+ * entries are written to the staging directory and the deployment is redeployed without uploading any content. If the
+ * deployment on the server does not refer to the staging directory the archive is fully exploded and the deployment
+ * is replaced.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class DeltaDeployment implements Deployment {
+
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final int BUFFER_SIZE = 65536;
+
+    private final ModelControllerClient client;
+    private final File content;
+    private final String name;
+    private final File stagingDir;
+    private final Messages messages = Messages.INSTANCE;
+    private int entriesChanged;
+    private int entriesTotal;
+    private long bytesWritten;
+    private long bytesTotal;
+    private boolean delta;
+
+    /**
+     * Creates a new deployment.
+     *
+     * @param client     the client that is connected.
+     * @param content    the content for the deployment.
+     * @param name       the name of the deployment, if {@code null} the name of the content file is used.
+     * @param stagingDir the directory the archive is exploded in, must be accessible to the server
+     */
+    public DeltaDeployment(final ModelControllerClient client, final File content, final String name, final File stagingDir) {
+        this.client = client;
+        this.content = content;
+        this.name = (name == null ? content.getName() : name);
+        this.stagingDir = stagingDir;
+    }
+
+    /**
+     * Creates a new deployment.
+     *
+     * @param client     the client that is connected.
+     * @param content    the content for the deployment.
+     * @param name       the name of the deployment, if {@code null} the name of the content file is used.
+     * @param stagingDir the directory the archive is exploded in, must be accessible to the server
+     *
+     * @return the new deployment
+     */
+    public static DeltaDeployment create(final ModelControllerClient client, final File content, final String name, final File stagingDir) {
+        return new DeltaDeployment(client, content, name, stagingDir);
+    }
+
+    @Override
+    public Status execute() throws DeploymentFailedException {
+        final long start = System.nanoTime();
+        try {
+            final Status status = deployDelta();
+            Metrics.INSTANCE.record(Metrics.getName(getType()), System.nanoTime() - start);
+            return status;
+        } catch (DeploymentFailedException e) {
+            Metrics.INSTANCE.recordFailure(Metrics.getName(getType()));
+            throw e;
+        }
+    }
+
+    private Status deployDelta() throws DeploymentFailedException {
+        try {
+            final File explodedDir = new File(stagingDir, name).getCanonicalFile();
+            final File manifestFile = new File(stagingDir, name + MANIFEST_SUFFIX);
+            final String deployedPath = UnmanagedDeployments.readDeployedPath(client, name);
+            delta = explodedDir.getPath().equals(deployedPath) && explodedDir.isDirectory() && manifestFile.isFile();
+
+            final ArchiveManifest previous;
+            if (delta) {
+                previous = ArchiveManifest.load(manifestFile);
+            } else {
+                previous = ArchiveManifest.EMPTY;
+                if (explodedDir.exists()) {
+                    Files.deleteRecursively(explodedDir);
+                }
+            }
+            final ArchiveManifest current = ArchiveManifest.of(content);
+            final Set<String> changed = current.getChangedEntries(previous);
+            final Set<String> removed = current.getRemovedEntries(previous);
+            entriesTotal = current.size();
+            bytesTotal = current.getTotalSize();
+            if (delta && changed.isEmpty() && removed.isEmpty()) {
+                // Nothing to do
+                return Status.SUCCESS;
+            }
+
+            // Remove the manifest first so an incomplete update results in a full update the next time
+            if (manifestFile.exists() && !manifestFile.delete()) {
+                throw new IOException(messages.getMessage("files.delete.error", manifestFile));
+            }
+            apply(explodedDir, changed, removed);
+            final ModelNode op;
+            if (delta) {
+                op = UnmanagedDeployments.createRedeployOperation(name);
+            } else {
+                op = UnmanagedDeployments.createReplaceOperation(name, explodedDir, deployedPath != null);
+            }
+            final ModelNode result = client.execute(op);
+            if (!ServerOperations.isSuccessfulOutcome(result)) {
+                throw new DeploymentFailedException(messages.getMessage("deployment.failed") + " " + ServerOperations.getFailureDescriptionAsString(result));
+            }
+            current.store(manifestFile);
+            return UnmanagedDeployments.getStatus(result);
+        } catch (DeploymentFailedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.error.executing", getType()), e);
+        }
+    }
+
+    @Override
+    public Type getType() {
+        return Type.FORCE_DEPLOY;
+    }
+
+    /**
+     * Indicates whether only the changes were applied, or the whole archive was exploded.
+     *
+     * @return {@code true} if only the changes were applied
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    /**
+     * Returns the number of entries written to or removed from the staging directory.
+     *
+     * @return the number of changed entries
+     */
+    public int getEntriesChanged() {
+        return entriesChanged;
+    }
+
+    /**
+     * Returns the number of entries in the archive.
+     *
+     * @return the number of entries
+     */
+    public int getEntriesTotal() {
+        return entriesTotal;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes written to the staging directory.
+     *
+     * @return the number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes that did not need to be written as the entries did not change.
+     *
+     * @return the number of bytes saved
+     */
+    public long getBytesSaved() {
+        return Math.max(0L, bytesTotal - bytesWritten);
+    }
+
+    /**
+     * Removes the directory and each of its parent directories below the exploded directory as long as they are
+     * empty.
+     */
+    private void removeEmptyDirectories(final File explodedDir, final File dir) throws IOException {
+        File current = dir;
+        while (current != null && !current.equals(explodedDir)) {
+            final String[] children = current.list();
+            if (children == null || children.length > 0) {
+                break;
+            }
+            if (!current.delete()) {
+                throw new IOException(messages.getMessage("files.delete.error", current));
+            }
+            current = current.getParentFile();
+        }
+    }
+
+    private void apply(final File explodedDir, final Set<String> changed, final Set<String> removed) throws IOException {
+        final String root = explodedDir.getPath() + File.separator;
+        for (String entryName : removed) {
+            final File file = new File(explodedDir, entryName);
+            if (!file.getCanonicalPath().startsWith(root)) {
+                throw new IOException(messages.getMessage("deployment.delta.invalid.entry", entryName, content));
+            }
+            // Directory entries are removed once the directory is empty
+            final boolean directory = entryName.endsWith("/");
+            if (!directory && file.exists() && !file.delete()) {
+                throw new IOException(messages.getMessage("files.delete.error", file));
+            }
+            removeEmptyDirectories(explodedDir, (directory ? file : file.getParentFile()));
+            entriesChanged++;
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final ZipFile zipFile = new ZipFile(content);
+        try {
+            for (String entryName : changed) {
+                final ZipEntry entry = zipFile.getEntry(entryName);
+                final File target = new File(explodedDir, entryName);
+                // Don't allow entries to be written outside of the exploded directory
+                if (!target.getCanonicalPath().startsWith(root)) {
+                    throw new IOException(messages.getMessage("deployment.delta.invalid.entry", entryName, content));
+                }
+                final File parent = target.getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs()) {
+                    throw new IOException(messages.getMessage("files.create.directory.error", parent));
+                }
+                final InputStream in = zipFile.getInputStream(entry);
+                try {
+                    final FileOutputStream out = new FileOutputStream(target);
+                    try {
+                        int len;
+                        while ((len = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, len);
+                            bytesWritten += len;
+                        }
+                    } finally {
+                        Streams.safeClose(out);
+                    }
+                } finally {
+                    Streams.safeClose(in);
+                }
+                entriesChanged++;
+            }
+        } finally {
+            Streams.safeClose(zipFile);
+        }
+    }
+}
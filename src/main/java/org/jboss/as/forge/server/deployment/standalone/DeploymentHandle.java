@@ -0,0 +1,499 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment.standalone;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.as.forge.server.deployment.Deployment.Status;
+import org.jboss.as.forge.server.deployment.Deployment.Type;
+import org.jboss.as.forge.server.deployment.DeploymentFailedException;
+import org.jboss.as.forge.util.Messages;
+
+/**
+ * A handle to a deployment executing in the background.
+ * <p/>
+ * The handle reports the phase the deployment is in, the number of bytes of the content uploaded to the server and
+ * the number of deployment actions completed. The deployment can be cancelled at any time, cancelling the deployment
+ * while the server executes the plan cancels the management operation. Cancelling is best-effort, the server may have
+ * already committed the deployment in which case the actual outcome is reported.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class DeploymentHandle {
+
+    /**
+     * The phases of a deployment.
+     */
+    public enum Phase {
+        /**
+         * The existing deployments are read and the deployment plan is created.
+         */
+        PREPARING,
+        /**
+         * The content is uploaded to the server.
+         */
+        UPLOADING,
+        /**
+         * The server executes the deployment plan.
+         */
+        EXECUTING,
+        /**
+         * The deployment completed successfully.
+         */
+        COMPLETED,
+        /**
+         * The deployment failed.
+         */
+        FAILED,
+        /**
+         * The deployment was cancelled or timed out.
+         */
+        CANCELLED;
+
+        /**
+         * Checks whether the phase is a final phase.
+         *
+         * @return {@code true} if the deployment has finished, otherwise {@code false}
+         */
+        public boolean isDone() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * A listener notified once the deployment has finished.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked once the deployment has finished, successfully or not.
+         *
+         * @param handle the handle of the deployment
+         */
+        void done(DeploymentHandle handle);
+    }
+
+    private final String name;
+    private final Type type;
+    private final Messages messages = Messages.INSTANCE;
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final List<Listener> listeners = new ArrayList<Listener>();
+    private final long startTime = System.nanoTime();
+    private volatile Phase phase = Phase.PREPARING;
+    private volatile long bytesTotal;
+    private volatile int actionsTotal;
+    private volatile int actionsCompleted;
+    private volatile int uploadAttempts = 1;
+    private volatile long endTime;
+    // Guarded by this
+    private Future<?> serverFuture;
+    private boolean cancelRequested;
+    private FutureTask<Status> task;
+
+    DeploymentHandle(final String name, final Type type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    /**
+     * Starts executing the deployment in a new daemon thread.
+     *
+     * @param deployment the deployment to execute
+     */
+    void start(final Callable<Status> deployment) {
+        final Thread thread = new Thread(createTask(deployment), "AS7-Deployment-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Executes the deployment on the current thread.
+     *
+     * @param deployment the deployment to execute
+     */
+    void run(final Callable<Status> deployment) {
+        createTask(deployment).run();
+    }
+
+    /**
+     * Returns the name of the deployment.
+     *
+     * @return the name of the deployment
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the type of the deployment.
+     *
+     * @return the type of the deployment
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the current phase of the deployment.
+     *
+     * @return the phase
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Returns the number of bytes of the content uploaded to the server.
+     *
+     * @return the number of bytes uploaded
+     */
+    public long getBytesUploaded() {
+        return bytesUploaded.get();
+    }
+
+    /**
+     * Returns the size of the content to upload, 0 if no content is uploaded.
+     *
+     * @return the size of the content in bytes
+     */
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    /**
+     * Returns the number of times the content was uploaded, more than once if an upload failed and was retried.
+     *
+     * @return the number of upload attempts
+     */
+    public int getUploadAttempts() {
+        return uploadAttempts;
+    }
+
+    /**
+     * Returns the number of deployment actions the server completed.
+     *
+     * @return the number of completed actions
+     */
+    public int getActionsCompleted() {
+        return actionsCompleted;
+    }
+
+    /**
+     * Returns the number of deployment actions in the plan, 0 until the plan has been created.
+     *
+     * @return the number of actions
+     */
+    public int getActionsTotal() {
+        return actionsTotal;
+    }
+
+    /**
+     * Returns the time, in milliseconds, the deployment has been executing or took to execute once finished.
+     *
+     * @return the elapsed time in milliseconds
+     */
+    public long getElapsedTime() {
+        final long end = (phase.isDone() && endTime > 0L ? endTime : System.nanoTime());
+        return TimeUnit.NANOSECONDS.toMillis(end - startTime);
+    }
+
+    /**
+     * Checks whether the deployment has finished.
+     *
+     * @return {@code true} if the deployment has finished, otherwise {@code false}
+     */
+    public boolean isDone() {
+        return phase.isDone();
+    }
+
+    /**
+     * Adds a listener which is notified once the deployment has finished. If the deployment has already finished the
+     * listener is notified immediately.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(final Listener listener) {
+        synchronized (listeners) {
+            if (!phase.isDone()) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.done(this);
+    }
+
+    /**
+     * Cancels the deployment. If the server is executing the deployment plan the management operation is cancelled.
+     * <p/>
+     * Cancelling is best-effort. Once the plan has been submitted the server decides whether the operation can still
+     * be cancelled, if the server has already committed the deployment it completes and the {@link #getPhase() phase}
+     * reports the actual outcome rather than {@link Phase#CANCELLED}.
+     *
+     * @return {@code true} if the cancellation was requested, {@code false} if the deployment had already finished
+     */
+    public boolean cancel() {
+        final Future<?> future;
+        synchronized (this) {
+            future = serverFuture;
+            cancelRequested = true;
+        }
+        if (future == null) {
+            // Nothing has been submitted to the server yet
+            return task.cancel(true);
+        }
+        return future.cancel(true);
+    }
+
+    /**
+     * Waits for the deployment to finish.
+     *
+     * @return the status of the deployment
+     *
+     * @throws DeploymentFailedException if the deployment failed, was cancelled or the thread was interrupted
+     */
+    public Status get() throws DeploymentFailedException {
+        return get(0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for the deployment to finish. If the deployment does not finish within the timeout it is cancelled.
+     *
+     * @param timeout the maximum time to wait, 0 or less to wait until the deployment finishes
+     * @param unit    the unit of the timeout
+     *
+     * @return the status of the deployment
+     *
+     * @throws DeploymentFailedException if the deployment failed, timed out, was cancelled or the thread was
+     *                                   interrupted
+     */
+    public Status get(final long timeout, final TimeUnit unit) throws DeploymentFailedException {
+        try {
+            return (timeout > 0L ? task.get(timeout, unit) : task.get());
+        } catch (TimeoutException e) {
+            cancel();
+            // The server may still complete the deployment, if so report the actual outcome
+            final Status status = awaitOutcome(timeout, unit);
+            if (status != null) {
+                return status;
+            }
+            throw new DeploymentFailedException(messages.getMessage("deployment.timeout", name, unit.toSeconds(timeout)));
+        } catch (CancellationException e) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.cancelled", name));
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new DeploymentFailedException(messages.getMessage("deployment.cancelled", name));
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof DeploymentFailedException) {
+                throw (DeploymentFailedException) cause;
+            }
+            throw new DeploymentFailedException(messages.getMessage("deployment.error.executing", type), cause);
+        }
+    }
+
+    /**
+     * Waits for the outcome of a deployment which has been cancelled.
+     *
+     * @return the status if the deployment completed regardless of the cancellation or {@code null} if the deployment
+     *         was cancelled or still has not finished
+     */
+    private Status awaitOutcome(final long timeout, final TimeUnit unit) throws DeploymentFailedException {
+        try {
+            return task.get(timeout, unit);
+        } catch (CancellationException e) {
+            return null;
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (isServerCancelled()) {
+                return null;
+            }
+            final Throwable cause = e.getCause();
+            if (cause instanceof DeploymentFailedException) {
+                throw (DeploymentFailedException) cause;
+            }
+            throw new DeploymentFailedException(messages.getMessage("deployment.error.executing", type), cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder();
+        result.append(name).append(" (").append(type).append("): ").append(phase);
+        if (bytesTotal > 0L) {
+            result.append(String.format(", %d of %d bytes uploaded", bytesUploaded.get(), bytesTotal));
+            if (uploadAttempts > 1) {
+                result.append(String.format(" (attempt %d)", uploadAttempts));
+            }
+        }
+        if (actionsTotal > 0) {
+            result.append(String.format(", %d of %d actions completed", actionsCompleted, actionsTotal));
+        }
+        return result.append(String.format(", %d ms", getElapsedTime())).toString();
+    }
+
+    /**
+     * Wraps the content so the bytes read by the client uploading the content are counted.
+     *
+     * @param content the content
+     * @param size    the size of the content
+     *
+     * @return the wrapped content
+     */
+    InputStream track(final InputStream content, final long size) {
+        return track(content, size, false);
+    }
+
+    /**
+     * Wraps the content so the bytes read by the client uploading the content are counted.
+     *
+     * @param content the content
+     * @param size    the size of the content
+     * @param retry   {@code true} if the content is uploaded again after a failed attempt
+     *
+     * @return the wrapped content
+     */
+    InputStream track(final InputStream content, final long size, final boolean retry) {
+        if (retry) {
+            bytesUploaded.set(0L);
+            bytesTotal = size;
+            uploadAttempts++;
+        } else {
+            bytesTotal += size;
+        }
+        phase = Phase.UPLOADING;
+        return new FilterInputStream(content) {
+            @Override
+            public int read() throws IOException {
+                final int result = super.read();
+                if (result != -1) {
+                    uploaded(1L);
+                }
+                return result;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int result = super.read(b, off, len);
+                if (result > 0) {
+                    uploaded(result);
+                }
+                return result;
+            }
+
+            @Override
+            public long skip(final long n) throws IOException {
+                final long result = super.skip(n);
+                uploaded(result);
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Records the plan is about to be submitted to the server.
+     *
+     * @param actions the number of actions in the plan
+     */
+    void submitting(final int actions) {
+        actionsTotal = actions;
+        phase = (bytesTotal > 0L && bytesUploaded.get() < bytesTotal ? Phase.UPLOADING : Phase.EXECUTING);
+    }
+
+    /**
+     * Records the plan was submitted to the server.
+     *
+     * @param future the future of the plan execution
+     */
+    synchronized void submitted(final Future<?> future) {
+        serverFuture = future;
+        if (cancelRequested) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Records an action of the plan completed.
+     */
+    void actionCompleted() {
+        actionsCompleted++;
+    }
+
+    private void uploaded(final long bytes) {
+        if (bytesUploaded.addAndGet(bytes) >= bytesTotal && phase == Phase.UPLOADING) {
+            phase = Phase.EXECUTING;
+        }
+    }
+
+    private FutureTask<Status> createTask(final Callable<Status> deployment) {
+        task = new FutureTask<Status>(deployment) {
+            @Override
+            protected void done() {
+                finish();
+            }
+        };
+        return task;
+    }
+
+    private synchronized boolean isServerCancelled() {
+        return serverFuture != null && serverFuture.isCancelled();
+    }
+
+    private void finish() {
+        endTime = System.nanoTime();
+        if (task.isCancelled() || isServerCancelled()) {
+            phase = Phase.CANCELLED;
+        } else {
+            try {
+                task.get();
+                phase = Phase.COMPLETED;
+            } catch (Exception e) {
+                phase = Phase.FAILED;
+            }
+        }
+        final List<Listener> toNotify;
+        synchronized (listeners) {
+            toNotify = new ArrayList<Listener>(listeners);
+            listeners.clear();
+        }
+        for (Listener listener : toNotify) {
+            listener.done(this);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment.standalone;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.forge.server.Metrics;
+import org.jboss.as.forge.server.ServerOperations;
+import org.jboss.as.forge.server.deployment.Deployment;
+import org.jboss.as.forge.server.deployment.DeploymentFailedException;
+import org.jboss.as.forge.util.Files;
+import org.jboss.as.forge.util.Messages;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A deployment for standalone servers on the local machine which the server reads from an exploded directory.
+ * <p/>
+ * The directory is assembled from one or more source directories, e.g. the exploded build output, the web resources
+ * and the compiled classes. When a source directory is added the path the contents are placed at within the deployment
+ * is given. Sources added later take precedence over sources added earlier.
+ * <p/>
+ * Each execution synchronizes the sources with the exploded directory by comparing the size and the modification time
+ * of each file. If only static resources changed the files are updated in place and the deployment is not redeployed.
+ * A redeploy is only executed when classes, libraries, nested archives or descriptors change.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class ExplodedDeployment implements Deployment {
+
+    /**
+     * The extensions of the files which always require a redeploy when changed
+     */
+    private static final String[] REDEPLOY_EXTENSIONS = {".class", ".jar", ".war", ".rar", ".sar", ".ear"};
+
+    private final ModelControllerClient client;
+    private final String name;
+    private final File explodedDir;
+    private final boolean staticResources;
+    private final Map<File, String> sources = new LinkedHashMap<File, String>();
+    private final Messages messages = Messages.INSTANCE;
+    private final List<String> updated = new ArrayList<String>();
+    private final List<String> removed = new ArrayList<String>();
+    private boolean redeployed;
+
+    /**
+     * Creates a new deployment.
+     *
+     * @param client          the client that is connected.
+     * @param name            the name of the deployment.
+     * @param stagingDir      the directory the deployment is assembled in, must be accessible to the server
+     * @param staticResources {@code true} if the deployment serves static resources which the server reads from the
+     *                        directory without a redeploy, e.g. the web resources of a WAR
+     */
+    public ExplodedDeployment(final ModelControllerClient client, final String name, final File stagingDir, final boolean staticResources) {
+        this.client = client;
+        this.name = name;
+        this.explodedDir = new File(stagingDir, name);
+        this.staticResources = staticResources;
+    }
+
+    /**
+     * Creates a new deployment.
+     *
+     * @param client          the client that is connected.
+     * @param name            the name of the deployment.
+     * @param stagingDir      the directory the deployment is assembled in, must be accessible to the server
+     * @param staticResources {@code true} if the deployment serves static resources which the server reads from the
+     *                        directory without a redeploy, e.g. the web resources of a WAR
+     *
+     * @return the new deployment
+     */
+    public static ExplodedDeployment create(final ModelControllerClient client, final String name, final File stagingDir, final boolean staticResources) {
+        return new ExplodedDeployment(client, name, stagingDir, staticResources);
+    }
+
+    /**
+     * Adds a source directory. Source directories which do not exist are ignored.
+     *
+     * @param dir  the source directory
+     * @param path the path, relative to the root of the deployment, the contents are placed at or an empty string for
+     *             the root
+     *
+     * @return this deployment
+     */
+    public ExplodedDeployment addSource(final File dir, final String path) {
+        sources.put(dir, path);
+        return this;
+    }
+
+    @Override
+    public Status execute() throws DeploymentFailedException {
+        final long start = System.nanoTime();
+        try {
+            final Status status = deployExploded();
+            Metrics.INSTANCE.record(Metrics.getName(getType()), System.nanoTime() - start);
+            return status;
+        } catch (DeploymentFailedException e) {
+            Metrics.INSTANCE.recordFailure(Metrics.getName(getType()));
+            throw e;
+        }
+    }
+
+    private Status deployExploded() throws DeploymentFailedException {
+        updated.clear();
+        removed.clear();
+        redeployed = false;
+        try {
+            final String deployedPath = UnmanagedDeployments.readDeployedPath(client, name);
+            final boolean deployed = explodedDir.getCanonicalPath().equals(deployedPath) && explodedDir.isDirectory();
+
+            // Resolve the source for each file, later sources override earlier sources
+            final Map<String, File> files = new LinkedHashMap<String, File>();
+            for (Map.Entry<File, String> source : sources.entrySet()) {
+                collect(source.getKey(), source.getValue(), files);
+            }
+            boolean requiresRedeploy = sync(files);
+
+            final ModelNode op;
+            if (!deployed) {
+                op = UnmanagedDeployments.createReplaceOperation(name, explodedDir, deployedPath != null);
+            } else if (requiresRedeploy) {
+                op = UnmanagedDeployments.createRedeployOperation(name);
+            } else {
+                // Files were updated in place
+                return Status.SUCCESS;
+            }
+            final ModelNode result = client.execute(op);
+            if (!ServerOperations.isSuccessfulOutcome(result)) {
+                throw new DeploymentFailedException(messages.getMessage("deployment.failed") + " " + ServerOperations.getFailureDescriptionAsString(result));
+            }
+            redeployed = true;
+            return UnmanagedDeployments.getStatus(result);
+        } catch (DeploymentFailedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.error.executing", getType()), e);
+        }
+    }
+
+    @Override
+    public Type getType() {
+        return Type.FORCE_DEPLOY;
+    }
+
+    /**
+     * Returns the paths of the files updated by the last execution.
+     *
+     * @return the updated paths
+     */
+    public List<String> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Returns the paths of the files removed by the last execution.
+     *
+     * @return the removed paths
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Indicates whether the last execution deployed or redeployed the deployment, or only updated files in place.
+     *
+     * @return {@code true} if the deployment was deployed or redeployed
+     */
+    public boolean isRedeployed() {
+        return redeployed;
+    }
+
+    private static void collect(final File dir, final String path, final Map<String, File> files) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            final String childPath = (path.isEmpty() ? child.getName() : path + "/" + child.getName());
+            if (child.isDirectory()) {
+                collect(child, childPath, files);
+            } else {
+                // Remove first so the overriding source determines the iteration order
+                files.remove(childPath);
+                files.put(childPath, child);
+            }
+        }
+    }
+
+    /**
+     * Synchronizes the exploded directory with the source files.
+     *
+     * @return {@code true} if a changed file requires a redeploy
+     */
+    private boolean sync(final Map<String, File> files) throws IOException {
+        boolean requiresRedeploy = false;
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            final File source = entry.getValue();
+            final File target = new File(explodedDir, entry.getKey());
+            if (target.length() == source.length() && target.lastModified() == source.lastModified()) {
+                continue;
+            }
+            final File parent = target.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException(messages.getMessage("files.create.directory.error", parent));
+            }
+            if (!Files.copyFile(source, target)) {
+                throw new IOException(messages.getMessage("deployment.exploded.copy.error", source, target));
+            }
+            target.setLastModified(source.lastModified());
+            updated.add(entry.getKey());
+            requiresRedeploy = requiresRedeploy || requiresRedeploy(entry.getKey());
+        }
+        // Remove files which no longer exist in any source
+        final List<String> existing = new ArrayList<String>();
+        list(explodedDir, "", existing);
+        for (String path : existing) {
+            if (!files.containsKey(path)) {
+                final File file = new File(explodedDir, path);
+                if (!file.delete()) {
+                    throw new IOException(messages.getMessage("files.delete.error", file));
+                }
+                removed.add(path);
+                requiresRedeploy = requiresRedeploy || requiresRedeploy(path);
+            }
+        }
+        if (!removed.isEmpty()) {
+            removeEmptyDirectories(explodedDir);
+        }
+        return requiresRedeploy;
+    }
+
+    /**
+     * Checks whether a change to the file at the path requires the deployment to be redeployed. Only static resources
+     * outside of the {@code WEB-INF} and {@code META-INF} directories are read from the directory by the server. For an
+     * EAR only the static resources of the unpacked web modules are read from the directory, any other change, e.g. a
+     * rebuilt nested archive, requires a redeploy.
+     */
+    private boolean requiresRedeploy(final String path) {
+        if (!staticResources) {
+            return true;
+        }
+        String resource = path;
+        if (name.endsWith(".ear")) {
+            final int index = path.indexOf('/');
+            if (index < 0 || !path.substring(0, index).endsWith(".war")) {
+                return true;
+            }
+            resource = path.substring(index + 1);
+        }
+        for (String extension : REDEPLOY_EXTENSIONS) {
+            if (resource.endsWith(extension)) {
+                return true;
+            }
+        }
+        return resource.startsWith("WEB-INF/") || resource.startsWith("META-INF/") || resource.contains("/WEB-INF/") || resource.contains("/META-INF/");
+    }
+
+    /**
+     * Removes the directories below the directory which no longer contain any files.
+     *
+     * @return {@code true} if the directory is empty
+     */
+    private static boolean removeEmptyDirectories(final File dir) throws IOException {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return false;
+        }
+        boolean empty = true;
+        for (File child : children) {
+            if (child.isDirectory() && removeEmptyDirectories(child)) {
+                if (!child.delete()) {
+                    throw new IOException(Messages.INSTANCE.getMessage("files.delete.error", child));
+                }
+            } else {
+                empty = false;
+            }
+        }
+        return empty;
+    }
+
+    private static void list(final File dir, final String path, final List<String> result) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            final String childPath = (path.isEmpty() ? child.getName() : path + "/" + child.getName());
+            if (child.isDirectory()) {
+                list(child, childPath, result);
+            } else {
+                result.add(childPath);
+            }
+        }
+    }
+}
@@ -23,10 +23,18 @@
 package org.jboss.as.forge.server.deployment.standalone;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.helpers.ClientConstants;
 import org.jboss.as.controller.client.helpers.standalone.DeploymentAction;
 import org.jboss.as.controller.client.helpers.standalone.DeploymentPlan;
 import org.jboss.as.controller.client.helpers.standalone.DeploymentPlanBuilder;
@@ -34,19 +42,36 @@ import org.jboss.as.controller.client.helpers.standalone.ServerDeploymentActionR
 import org.jboss.as.controller.client.helpers.standalone.ServerDeploymentManager;
 import org.jboss.as.controller.client.helpers.standalone.ServerDeploymentPlanResult;
 import org.jboss.as.controller.client.helpers.standalone.ServerUpdateActionResult;
+import org.jboss.as.forge.server.Metrics;
 import org.jboss.as.forge.server.ServerOperations;
+import org.jboss.as.forge.server.deployment.ContentHashCache;
 import org.jboss.as.forge.server.deployment.Deployment;
 import org.jboss.as.forge.server.deployment.DeploymentFailedException;
 import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Streams;
 import org.jboss.dmr.ModelNode;
 
 /**
  * A deployment for standalone servers.
+ * <p/>
+ * Forced deployments and redeployments of content identical to the content the server already runs, determined by
+ * comparing the SHA-1 hash of the content with the hash of the deployed content, are not executed.
+ * <p/>
+ * Content is uploaded to the content repository of the server before the deployment operation is executed. The
+ * upload is verified against the SHA-1 hash of the content and retried if it fails, see {@link ContentUploader}.
+ * <p/>
+ * A deployment can be {@link #executeAsync() executed in the background} which returns a {@link DeploymentHandle
+ * handle} reporting the progress of the deployment and allowing the deployment to be cancelled.
  *
  * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
  */
 public class StandaloneDeployment implements Deployment {
 
+    private static final String ENABLED = "enabled";
+    private static final String HASH = "hash";
+    // The failure description code of a missing resource in 7.1 and later, 7.0 only reports the message
+    private static final String[] NOT_FOUND_FAILURES = {"JBAS014807", "not found"};
+
     private final File content;
     private final ModelControllerClient client;
     private final String name;
@@ -82,7 +107,20 @@ public class StandaloneDeployment implements Deployment {
         return new StandaloneDeployment(client, content, name, type);
     }
 
-    private DeploymentPlan createPlan(final DeploymentPlanBuilder builder) throws IOException {
+    /**
+     * Adds the actions required for the deployment type to the plan builder.
+     *
+     * @param builder the builder to add the actions to
+     * @param name    the name of the deployment
+     * @param content the content of the deployment, only used for types that {@link #requiresContent(Type) require
+     *                content}
+     * @param type    the type of the deployment
+     * @param exists  whether or not the deployment exists on the server, only used for types that {@link
+     *                #requiresExistsCheck(Type) require the check}
+     *
+     * @return the builder or {@code null} if there is nothing to do for the deployment
+     */
+    static DeploymentPlanBuilder addActions(final DeploymentPlanBuilder builder, final String name, final InputStream content, final Type type, final boolean exists) {
         DeploymentPlanBuilder planBuilder = builder;
         switch (type) {
             case DEPLOY: {
@@ -98,7 +136,7 @@ public class StandaloneDeployment implements Deployment {
                 break;
             }
             case FORCE_DEPLOY: {
-                if (exists()) {
+                if (exists) {
                     planBuilder = builder.replace(name, content).redeploy(name);
                 } else {
                     planBuilder = builder.add(name, content).andDeploy();
@@ -106,7 +144,7 @@ public class StandaloneDeployment implements Deployment {
                 break;
             }
             case UNDEPLOY_IGNORE_MISSING: {
-                if (exists()) {
+                if (exists) {
                     planBuilder = builder.undeploy(name).remove(name);
                 } else {
                     return null;
@@ -114,19 +152,191 @@ public class StandaloneDeployment implements Deployment {
                 break;
             }
         }
-        return planBuilder.build();
+        return planBuilder;
+    }
+
+    /**
+     * Checks whether the deployment type uploads content to the server.
+     *
+     * @param type the deployment type
+     *
+     * @return {@code true} if the content is uploaded, otherwise {@code false}
+     */
+    static boolean requiresContent(final Type type) {
+        return type == Type.DEPLOY || type == Type.FORCE_DEPLOY || type == Type.REDEPLOY;
+    }
+
+    /**
+     * Checks whether the deployment type needs to read the existing deployments, either to know if the deployment
+     * exists or to know if the deployed content is {@link #isUnchanged(ModelNode, File, Type) unchanged}. A redeploy
+     * always replaces the deployment and does not need to read it.
+     *
+     * @param type the deployment type
+     *
+     * @return {@code true} if the existing deployments need to be read, otherwise {@code false}
+     */
+    static boolean requiresExistsCheck(final Type type) {
+        return type == Type.FORCE_DEPLOY || type == Type.UNDEPLOY_IGNORE_MISSING;
+    }
+
+    /**
+     * Checks whether the deployment would replace an enabled deployment with identical content. Only forced
+     * deployments are considered, a redeploy always restarts the deployment.
+     *
+     * @param deployment the deployment resource read from the server or {@code null} if the deployment does not exist
+     * @param content    the content of the deployment
+     * @param type       the type of the deployment
+     *
+     * @return {@code true} if the deployment does not need to be executed, otherwise {@code false}
+     *
+     * @throws IOException if the content could not be read
+     */
+    static boolean isUnchanged(final ModelNode deployment, final File content, final Type type) throws IOException {
+        if (type != Type.FORCE_DEPLOY || deployment == null) {
+            return false;
+        }
+        if (!deployment.hasDefined(ENABLED) || !deployment.get(ENABLED).asBoolean()) {
+            return false;
+        }
+        // Unmanaged content has a path rather than a hash
+        if (!deployment.hasDefined(ClientConstants.CONTENT)) {
+            return false;
+        }
+        final ModelNode deployedContent = deployment.get(ClientConstants.CONTENT).get(0);
+        return deployedContent.hasDefined(HASH) && ContentHashCache.INSTANCE.matches(content, deployedContent.get(HASH).asBytes());
+    }
+
+    /**
+     * Reads a single deployment on the server.
+     *
+     * @param client the client used to read the deployment
+     * @param name   the name of the deployment
+     *
+     * @return the deployment resource or {@code null} if the deployment does not exist
+     *
+     * @throws IOException               if an error occurs executing the operation
+     * @throws DeploymentFailedException if reading the deployment failed for any reason other than the deployment
+     *                                   not existing, e.g. the user is not authorized to read it
+     */
+    static ModelNode readDeployment(final ModelControllerClient client, final String name) throws IOException, DeploymentFailedException {
+        // CLI /deployment=name:read-resource
+        final ModelNode op = ServerOperations.createOperation(ClientConstants.READ_RESOURCE_OPERATION, ServerOperations.createAddress(ClientConstants.DEPLOYMENT, name));
+        final ModelNode result = client.execute(op);
+        if (ServerOperations.isSuccessfulOutcome(result)) {
+            return ServerOperations.readResult(result);
+        }
+        final String failure = ServerOperations.getFailureDescriptionAsString(result);
+        if (isNotFound(failure)) {
+            return null;
+        }
+        throw new DeploymentFailedException(Messages.INSTANCE.getMessage("deployment.read.failed", name, failure));
+    }
+
+    private static boolean isNotFound(final String failure) {
+        for (String notFound : NOT_FOUND_FAILURES) {
+            if (failure.contains(notFound)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the deployments on the server.
+     *
+     * @param client the client used to read the deployments
+     *
+     * @return the deployment resources keyed by the name of the deployment
+     */
+    static Map<String, ModelNode> readDeployments(final ModelControllerClient client) {
+        // CLI :read-children-resources(child-type=deployment)
+        final ModelNode op = ServerOperations.createReadDeploymentsOperation();
+        final ModelNode result;
+        try {
+            result = client.execute(op);
+            // Check to make sure there is an outcome
+            if (ServerOperations.isSuccessfulOutcome(result)) {
+                final Map<String, ModelNode> deployments = new HashMap<String, ModelNode>();
+                final ModelNode resources = ServerOperations.readResult(result);
+                if (resources.isDefined()) {
+                    for (String name : resources.keys()) {
+                        deployments.put(name, resources.get(name));
+                    }
+                }
+                return deployments;
+            }
+            throw new IllegalStateException(ServerOperations.getFailureDescriptionAsString(result));
+        } catch (IOException e) {
+            throw new IllegalStateException(Messages.INSTANCE.getMessage("op.failure", op), e);
+        }
     }
 
     @Override
     public Status execute() throws DeploymentFailedException {
+        final DeploymentHandle handle = new DeploymentHandle(name, type);
+        handle.run(createTask(handle));
+        return handle.get();
+    }
+
+    /**
+     * Executes the deployment in the background.
+     *
+     * @return the handle of the deployment
+     */
+    public DeploymentHandle executeAsync() {
+        final DeploymentHandle handle = new DeploymentHandle(name, type);
+        handle.start(createTask(handle));
+        return handle;
+    }
+
+    private Callable<Status> createTask(final DeploymentHandle handle) {
+        return new Callable<Status>() {
+            @Override
+            public Status call() throws DeploymentFailedException {
+                final long start = System.nanoTime();
+                try {
+                    final Status status = execute(handle);
+                    Metrics.INSTANCE.record(Metrics.getName(type), System.nanoTime() - start);
+                    return status;
+                } catch (DeploymentFailedException e) {
+                    Metrics.INSTANCE.recordFailure(Metrics.getName(type));
+                    throw e;
+                }
+            }
+        };
+    }
+
+    private Status execute(final DeploymentHandle handle) throws DeploymentFailedException {
         Status resultStatus = Status.SUCCESS;
+        InputStream in = null;
+        Future<ServerDeploymentPlanResult> future = null;
         try {
+            if (type == Type.UNDEPLOY_IGNORE_MISSING) {
+                return undeployIgnoreMissing(handle);
+            }
             final ServerDeploymentManager manager = ServerDeploymentManager.Factory.create(client);
-            final DeploymentPlanBuilder builder = manager.newDeploymentPlan();
-            final DeploymentPlan plan = createPlan(builder);
+            // Only the deployment itself is read, not every deployment on the server
+            final ModelNode deployment = (requiresExistsCheck(type) ? readDeployment(client, name) : null);
+            if (isUnchanged(deployment, content, type)) {
+                return Status.UNCHANGED;
+            }
+            if (requiresContent(type)) {
+                // Upload the content separately so it can be verified and retried without redeploying
+                final byte[] hash = new ContentUploader(client, handle).upload(content);
+                if (hash != null) {
+                    return deployUploaded(handle, hash, deployment != null);
+                }
+                // Not supported by the server, upload the content with the deployment plan
+                in = handle.track(new FileInputStream(content), content.length(), true);
+            }
+            final DeploymentPlanBuilder planBuilder = addActions(manager.newDeploymentPlan(), name, in, type, deployment != null);
+            final DeploymentPlan plan = (planBuilder == null ? null : planBuilder.build());
             if (plan != null) {
                 if (plan.getDeploymentActions().size() > 0) {
-                    final ServerDeploymentPlanResult planResult = manager.execute(plan).get();
+                    handle.submitting(plan.getDeploymentActions().size());
+                    future = manager.execute(plan);
+                    handle.submitted(future);
+                    final ServerDeploymentPlanResult planResult = future.get();
                     // Check the results
                     for (DeploymentAction action : plan.getDeploymentActions()) {
                         final ServerDeploymentActionResult actionResult = planResult.getDeploymentActionResult(action.getId());
@@ -142,43 +352,91 @@ public class StandaloneDeployment implements Deployment {
                                 resultStatus = Status.REQUIRES_RESTART;
                                 break;
                         }
+                        handle.actionCompleted();
                     }
                 }
             }
         } catch (DeploymentFailedException e) {
             throw e;
+        } catch (InterruptedException e) {
+            // The deployment was cancelled, cancel the operation on the server as well
+            if (future != null) {
+                future.cancel(true);
+            }
+            throw new DeploymentFailedException(messages.getMessage("deployment.cancelled", name), e);
+        } catch (CancellationException e) {
+            // The server cancelled the operation
+            throw new DeploymentFailedException(messages.getMessage("deployment.cancelled", name), e);
         } catch (Exception e) {
             throw new DeploymentFailedException(messages.getMessage("deployment.error.executing", type), e);
+        } finally {
+            Streams.safeClose(in);
         }
         return resultStatus;
     }
 
-    @Override
-    public Type getType() {
-        return type;
+    /**
+     * Deploys content which has already been uploaded to the content repository of the server. If the deployment fails
+     * the content is left in the content repository, see {@link ContentUploader}.
+     */
+    private Status deployUploaded(final DeploymentHandle handle, final byte[] hash, final boolean exists) throws IOException, InterruptedException, DeploymentFailedException {
+        final ModelNode op;
+        if (type == Type.DEPLOY || (type == Type.FORCE_DEPLOY && !exists)) {
+            op = ContentUploader.createAddOperation(name, hash);
+        } else {
+            op = ContentUploader.createReplaceOperation(name, hash);
+        }
+        handle.submitting(2);
+        final Future<ModelNode> future = client.executeAsync(op, null);
+        handle.submitted(future);
+        final ModelNode result;
+        try {
+            result = future.get();
+        } catch (ExecutionException e) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.error.executing", type), e.getCause());
+        }
+        if (!ServerOperations.isSuccessfulOutcome(result)) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.failed") + " " + ServerOperations.getFailureDescriptionAsString(result));
+        }
+        handle.actionCompleted();
+        handle.actionCompleted();
+        return UnmanagedDeployments.getStatus(result);
     }
 
-    private boolean exists() {
-        // CLI :read-children-names(child-type=deployment)
-        final ModelNode op = ServerOperations.createListDeploymentsOperation();
+    /**
+     * Undeploys and removes the deployment in a single composite operation without checking whether the deployment
+     * exists first. Only if the operation fails is the deployment read to determine whether the failure was caused by
+     * the deployment not existing.
+     */
+    private Status undeployIgnoreMissing(final DeploymentHandle handle) throws IOException, InterruptedException, DeploymentFailedException {
+        final ModelNode address = ServerOperations.createAddress(ClientConstants.DEPLOYMENT, name);
+        final ModelNode op = ServerOperations.createCompositeOperation();
+        final ModelNode steps = op.get(ClientConstants.STEPS);
+        steps.add(ServerOperations.createOperation(ClientConstants.DEPLOYMENT_UNDEPLOY_OPERATION, address));
+        steps.add(ServerOperations.createOperation(ClientConstants.DEPLOYMENT_REMOVE_OPERATION, address));
+        handle.submitting(2);
+        final Future<ModelNode> future = client.executeAsync(op, null);
+        handle.submitted(future);
         final ModelNode result;
         try {
-            result = client.execute(op);
-            final String deploymentName = name;
-            // Check to make sure there is an outcome
-            if (ServerOperations.isSuccessfulOutcome(result)) {
-                final List<ModelNode> deployments = ServerOperations.readResult(result).asList();
-                for (ModelNode n : deployments) {
-                    if (n.asString().equals(deploymentName)) {
-                        return true;
-                    }
-                }
-            } else {
-                throw new IllegalStateException(ServerOperations.getFailureDescriptionAsString(result));
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException(messages.getMessage("op.failure", op), e);
+            result = future.get();
+        } catch (ExecutionException e) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.error.executing", type), e.getCause());
         }
-        return false;
+        if (ServerOperations.isSuccessfulOutcome(result)) {
+            handle.actionCompleted();
+            handle.actionCompleted();
+            return UnmanagedDeployments.getStatus(result);
+        }
+        if (readDeployment(client, name) == null) {
+            // Nothing to undeploy
+            return Status.SUCCESS;
+        }
+        throw new DeploymentFailedException(messages.getMessage("deployment.failed") + " " + ServerOperations.getFailureDescriptionAsString(result));
+    }
+
+    @Override
+    public Type getType() {
+        return type;
     }
 }
@@ -0,0 +1,231 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment.standalone;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.helpers.standalone.DeploymentAction;
+import org.jboss.as.controller.client.helpers.standalone.DeploymentPlan;
+import org.jboss.as.controller.client.helpers.standalone.DeploymentPlanBuilder;
+import org.jboss.as.controller.client.helpers.standalone.InitialDeploymentPlanBuilder;
+import org.jboss.as.controller.client.helpers.standalone.ServerDeploymentActionResult;
+import org.jboss.as.controller.client.helpers.standalone.ServerDeploymentManager;
+import org.jboss.as.controller.client.helpers.standalone.ServerDeploymentPlanResult;
+import org.jboss.as.forge.server.deployment.Deployment.Status;
+import org.jboss.as.forge.server.deployment.Deployment.Type;
+import org.jboss.as.forge.server.deployment.DeploymentFailedException;
+import org.jboss.as.forge.server.deployment.DeploymentResult;
+import org.jboss.as.forge.util.Messages;
+import org.jboss.as.forge.util.Streams;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A batch of deployments for standalone servers executed as a single deployment plan.
+ * <p/>
+ * The existing deployments are read at most once for the whole batch and all the actions are executed in a single
+ * management operation. If the batch is created with rollback enabled, a failure of any deployment rolls back the
+ * whole batch. Deployments of content identical to the content the server already runs are left out of the plan.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class StandaloneDeploymentBatch {
+
+    private final ModelControllerClient client;
+    private final boolean rollback;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private final Messages messages = Messages.INSTANCE;
+
+    /**
+     * Creates a new batch.
+     *
+     * @param client   the client that is connected.
+     * @param rollback {@code true} if a failure of any deployment should roll back the whole batch
+     */
+    public StandaloneDeploymentBatch(final ModelControllerClient client, final boolean rollback) {
+        this.client = client;
+        this.rollback = rollback;
+    }
+
+    /**
+     * Creates a new batch.
+     *
+     * @param client   the client that is connected.
+     * @param rollback {@code true} if a failure of any deployment should roll back the whole batch
+     *
+     * @return the new batch
+     */
+    public static StandaloneDeploymentBatch create(final ModelControllerClient client, final boolean rollback) {
+        return new StandaloneDeploymentBatch(client, rollback);
+    }
+
+    /**
+     * Adds a deployment to the batch. The name of each deployment must be unique within the batch.
+     *
+     * @param content the content for the deployment.
+     * @param name    the name of the deployment, if {@code null} the name of the content file is used.
+     * @param type    the deployment type.
+     *
+     * @return this batch
+     *
+     * @throws DeploymentFailedException if the batch already contains a deployment with the same name
+     */
+    public StandaloneDeploymentBatch add(final File content, final String name, final Type type) throws DeploymentFailedException {
+        final String deploymentName = (name == null ? content.getName() : name);
+        final Entry existing = entries.get(deploymentName);
+        if (existing != null) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.batch.duplicate", deploymentName, existing.content, content));
+        }
+        entries.put(deploymentName, new Entry(deploymentName, content, type));
+        return this;
+    }
+
+    /**
+     * Checks whether any deployments have been added to the batch.
+     *
+     * @return {@code true} if the batch is empty, otherwise {@code false}
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Executes the batch.
+     *
+     * @return the result of each deployment in the order the deployments were added
+     *
+     * @throws DeploymentFailedException if the plan could not be created or executed
+     */
+    public List<DeploymentResult> execute() throws DeploymentFailedException {
+        if (entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<InputStream> streams = new ArrayList<InputStream>();
+        try {
+            // Only read the existing deployments if required and only once for the whole batch
+            Map<String, ModelNode> existing = Collections.emptyMap();
+            for (Entry entry : entries.values()) {
+                if (StandaloneDeployment.requiresExistsCheck(entry.type)) {
+                    existing = StandaloneDeployment.readDeployments(client);
+                    break;
+                }
+            }
+            final ServerDeploymentManager manager = ServerDeploymentManager.Factory.create(client);
+            final InitialDeploymentPlanBuilder initialBuilder = manager.newDeploymentPlan();
+            // A plan rolls back on any failure unless rollback is explicitly disabled
+            DeploymentPlanBuilder builder = (rollback ? initialBuilder.withRollback() : initialBuilder.withoutRollback());
+            for (Entry entry : entries.values()) {
+                final ModelNode deployment = existing.get(entry.name);
+                if (StandaloneDeployment.isUnchanged(deployment, entry.content, entry.type)) {
+                    entry.status = Status.UNCHANGED;
+                    continue;
+                }
+                InputStream in = null;
+                if (StandaloneDeployment.requiresContent(entry.type)) {
+                    in = new FileInputStream(entry.content);
+                    streams.add(in);
+                }
+                final DeploymentPlanBuilder next = StandaloneDeployment.addActions(builder, entry.name, in, entry.type, deployment != null);
+                if (next != null) {
+                    builder = next;
+                }
+            }
+            final DeploymentPlan plan = builder.build();
+            if (!plan.getDeploymentActions().isEmpty()) {
+                final ServerDeploymentPlanResult planResult = manager.execute(plan).get();
+                for (DeploymentAction action : plan.getDeploymentActions()) {
+                    final Entry entry = entries.get(action.getDeploymentUnitUniqueName());
+                    if (entry != null) {
+                        entry.update(planResult.getDeploymentActionResult(action.getId()));
+                    }
+                }
+            }
+        } catch (DeploymentFailedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DeploymentFailedException(messages.getMessage("deployment.error.executing", entries.keySet()), e);
+        } finally {
+            for (InputStream in : streams) {
+                Streams.safeClose(in);
+            }
+        }
+        final List<DeploymentResult> results = new ArrayList<DeploymentResult>(entries.size());
+        for (Entry entry : entries.values()) {
+            results.add(entry.toResult());
+        }
+        return results;
+    }
+
+    private class Entry {
+        final String name;
+        final File content;
+        final Type type;
+        Status status = Status.SUCCESS;
+        String failureMessage;
+        Throwable failure;
+
+        Entry(final String name, final File content, final Type type) {
+            this.name = name;
+            this.content = content;
+            this.type = type;
+        }
+
+        void update(final ServerDeploymentActionResult actionResult) {
+            // Only the first failure is recorded
+            if (failureMessage != null || actionResult == null) {
+                return;
+            }
+            switch (actionResult.getResult()) {
+                case FAILED:
+                    failureMessage = messages.getMessage("deployment.failed");
+                    failure = actionResult.getDeploymentException();
+                    break;
+                case NOT_EXECUTED:
+                    failureMessage = messages.getMessage("deployment.not.executed");
+                    failure = actionResult.getDeploymentException();
+                    break;
+                case ROLLED_BACK:
+                    failureMessage = messages.getMessage("deployment.failed.rolled-back");
+                    failure = actionResult.getDeploymentException();
+                    break;
+                case CONFIGURATION_MODIFIED_REQUIRES_RESTART:
+                    status = Status.REQUIRES_RESTART;
+                    break;
+            }
+        }
+
+        DeploymentResult toResult() {
+            if (failureMessage == null) {
+                return DeploymentResult.success(name, type, status);
+            }
+            return DeploymentResult.failed(name, type, failureMessage, failure);
+        }
+    }
+}
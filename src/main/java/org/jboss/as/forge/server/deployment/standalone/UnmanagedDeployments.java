@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.server.deployment.standalone;
+
+import static org.jboss.as.controller.client.helpers.ClientConstants.CONTENT;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_DEPLOY_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_REDEPLOY_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_REMOVE_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.DEPLOYMENT_UNDEPLOY_OPERATION;
+import static org.jboss.as.controller.client.helpers.ClientConstants.STEPS;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.forge.server.Server.State;
+import org.jboss.as.forge.server.ServerOperations;
+import org.jboss.as.forge.server.deployment.Deployment.Status;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Operations for unmanaged exploded deployments, i.e. deployments the server reads directly from a directory.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class UnmanagedDeployments {
+
+    private static final String ARCHIVE = "archive";
+    private static final String PATH = "path";
+
+    private UnmanagedDeployments() {
+    }
+
+    /**
+     * Reads the path of the deployment content.
+     *
+     * @param client the client used to read the content
+     * @param name   the name of the deployment
+     *
+     * @return the canonical path of the exploded content, an empty string if the content is not an exploded directory
+     *         or {@code null} if the deployment does not exist
+     *
+     * @throws IOException if an error occurs executing the operation
+     */
+    static String readDeployedPath(final ModelControllerClient client, final String name) throws IOException {
+        final ModelNode op = ServerOperations.createReadAttributeOperation(createAddress(name), CONTENT);
+        final ModelNode result = client.execute(op);
+        if (!ServerOperations.isSuccessfulOutcome(result)) {
+            return null;
+        }
+        final ModelNode contentNode = ServerOperations.readResult(result);
+        if (contentNode.isDefined()) {
+            for (ModelNode c : contentNode.asList()) {
+                if (c.hasDefined(PATH) && !c.get(ARCHIVE).asBoolean(true)) {
+                    return new File(c.get(PATH).asString()).getCanonicalPath();
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Creates a composite operation which removes the existing deployment, if required, and deploys the exploded
+     * directory.
+     *
+     * @param name        the name of the deployment
+     * @param explodedDir the directory the server should read the deployment from
+     * @param exists      {@code true} if the deployment already exists and needs to be removed first
+     *
+     * @return the operation
+     */
+    static ModelNode createReplaceOperation(final String name, final File explodedDir, final boolean exists) {
+        final ModelNode address = createAddress(name);
+        final ModelNode op = ServerOperations.createCompositeOperation();
+        final ModelNode steps = op.get(STEPS);
+        if (exists) {
+            steps.add(ServerOperations.createOperation(DEPLOYMENT_UNDEPLOY_OPERATION, address));
+            steps.add(ServerOperations.createOperation(DEPLOYMENT_REMOVE_OPERATION, address));
+        }
+        final ModelNode add = ServerOperations.createAddOperation(address);
+        final ModelNode contentNode = add.get(CONTENT).add();
+        contentNode.get(PATH).set(explodedDir.getAbsolutePath());
+        contentNode.get(ARCHIVE).set(false);
+        steps.add(add);
+        steps.add(ServerOperations.createOperation(DEPLOYMENT_DEPLOY_OPERATION, address));
+        return op;
+    }
+
+    /**
+     * Creates an operation to redeploy the deployment.
+     *
+     * @param name the name of the deployment
+     *
+     * @return the operation
+     */
+    static ModelNode createRedeployOperation(final String name) {
+        return ServerOperations.createOperation(DEPLOYMENT_REDEPLOY_OPERATION, createAddress(name));
+    }
+
+    /**
+     * Returns the status based on the {@code process-state} response header of a deployment operation.
+     *
+     * @param result the result of the operation
+     *
+     * @return the status
+     */
+    static Status getStatus(final ModelNode result) {
+        if (result.hasDefined("response-headers") && result.get("response-headers").hasDefined("process-state")) {
+            final State state = State.fromModel(result.get("response-headers", "process-state"));
+            if (state == State.RELOAD_REQUIRED) {
+                return Status.REQUIRES_RELOAD;
+            }
+            return Status.REQUIRES_RESTART;
+        }
+        return Status.SUCCESS;
+    }
+
+    private static ModelNode createAddress(final String name) {
+        return ServerOperations.createAddress(DEPLOYMENT, name);
+    }
+}
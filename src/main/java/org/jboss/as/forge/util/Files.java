@@ -22,16 +22,31 @@
 
 package org.jboss.as.forge.util;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.channels.FileChannel;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
@@ -44,6 +59,11 @@ import org.apache.commons.compress.archivers.zip.ZipFile;
 public class Files {
     static final String TMP_DIR_PROPERTY = "java.io.tmpdir";
 
+    private static final boolean IS_WINDOWS = String.valueOf(getProperty("os.name")).toLowerCase(Locale.ENGLISH).contains("windows");
+    private static final boolean IS_MAC = String.valueOf(getProperty("os.name")).toLowerCase(Locale.ENGLISH).startsWith("mac");
+    private static final int EXTRACT_BUFFER_SIZE = 65536;
+    private static final int MAX_EXTRACT_THREADS = 8;
+
     /**
      * Creates a file from the base with each path element.
      *
@@ -96,55 +116,43 @@ public class Files {
         return extractAppServer(zipPath, target, false);
     }
 
+    /**
+     * Extracts the application server archive to the target directory.
+     * <p/>
+     * The archive is extracted to a sibling directory of the target, so the final rename stays on the same file system,
+     * using a pool of threads. Directories are created once before any files are extracted.
+     *
+     * @param zipPath   the path to the archive
+     * @param target    the target directory
+     * @param overwrite {@code true} if the target directory should be overwritten if it exists
+     *
+     * @return {@code true} if the archive was successfully extracted, otherwise {@code false}
+     *
+     * @throws IOException if an error occurs extracting the archive
+     */
     public static boolean extractAppServer(final String zipPath, final File target, final boolean overwrite) throws IOException {
         if (target.exists() && !overwrite) {
             throw new IllegalStateException(Messages.INSTANCE.getMessage("files.not.empty.directory"));
         }
-        // Create a temporary directory
-        final File tmpDir = new File(getTempDirectory(), "jboss-as-" + zipPath.hashCode());
+        final File absoluteTarget = target.getAbsoluteFile();
+        final File parent = absoluteTarget.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException(Messages.INSTANCE.getMessage("files.create.directory.error", parent));
+        }
+        // Create a temporary directory next to the target
+        final File tmpDir = new File(parent, String.format(".%s-%x.tmp", absoluteTarget.getName(), zipPath.hashCode()));
         if (tmpDir.exists()) {
             deleteRecursively(tmpDir);
         }
         try {
-            final byte buff[] = new byte[1024];
             ZipFile file = null;
             try {
                 file = new ZipFile(zipPath);
-                final Enumeration<ZipArchiveEntry> entries = file.getEntries();
-                while (entries.hasMoreElements()) {
-                    final ZipArchiveEntry entry = entries.nextElement();
-                    // Create the extraction target
-                    final File extractTarget = new File(tmpDir, entry.getName());
-                    if (entry.isDirectory()) {
-                        extractTarget.mkdirs();
-                    } else {
-                        final File parent = new File(extractTarget.getParent());
-                        parent.mkdirs();
-                        final BufferedInputStream in = new BufferedInputStream(file.getInputStream(entry));
-                        try {
-                            final BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(extractTarget));
-                            try {
-                                int read;
-                                while ((read = in.read(buff)) != -1) {
-                                    out.write(buff, 0, read);
-                                }
-                            } finally {
-                                Streams.safeClose(out);
-                            }
-                        } finally {
-                            Streams.safeClose(in);
-                        }
-                        // Set the file permissions
-                        if (entry.getUnixMode() > 0) {
-                            setPermissions(extractTarget, FilePermissions.of(entry.getUnixMode()));
-                        }
-                    }
-                }
+                extract(file, tmpDir);
             } catch (IOException e) {
-                throw new IOException(Messages.INSTANCE.getMessage("files.extraction.error", file), e);
+                throw new IOException(Messages.INSTANCE.getMessage("files.extraction.error", zipPath), e);
             } finally {
                 ZipFile.closeQuietly(file);
-                // Streams.safeClose(file);
             }
             // If the target exists, remove then rename
             if (target.exists()) {
@@ -152,16 +160,97 @@ public class Files {
             }
             // First child should be a directory and there should only be one child
             final File[] children = tmpDir.listFiles();
-            if (children != null && children.length == 1) {
-                return moveDirectory(children[0], target);
+            if (children != null && children.length == 1 && children[0].isDirectory()) {
+                return moveDirectory(children[0], absoluteTarget);
             }
-            return moveDirectory(tmpDir, target);
+            return moveDirectory(tmpDir, absoluteTarget);
 
         } finally {
-            deleteRecursively(tmpDir);
+            if (tmpDir.exists()) {
+                deleteRecursively(tmpDir);
+            }
         }
     }
 
+    private static void extract(final ZipFile file, final File targetDir) throws IOException {
+        // Collect the directories and files
+        final SortedSet<String> directories = new TreeSet<String>();
+        final List<ZipArchiveEntry> files = new ArrayList<ZipArchiveEntry>();
+        final Enumeration<ZipArchiveEntry> entries = file.getEntries();
+        while (entries.hasMoreElements()) {
+            final ZipArchiveEntry entry = entries.nextElement();
+            final String name = entry.getName();
+            if (entry.isDirectory()) {
+                directories.add(name);
+            } else {
+                files.add(entry);
+                final int index = name.lastIndexOf('/');
+                if (index > 0) {
+                    directories.add(name.substring(0, index + 1));
+                }
+            }
+        }
+        // Sorted order guarantees parents are created before children
+        for (String dir : directories) {
+            final File d = new File(targetDir, dir);
+            if (!d.isDirectory() && !d.mkdirs()) {
+                throw new IOException(Messages.INSTANCE.getMessage("files.create.directory.error", d));
+            }
+        }
+        if (!targetDir.isDirectory() && !targetDir.mkdirs()) {
+            throw new IOException(Messages.INSTANCE.getMessage("files.create.directory.error", targetDir));
+        }
+        // Extract the largest entries first to balance the work across the threads
+        Collections.sort(files, new Comparator<ZipArchiveEntry>() {
+            @Override
+            public int compare(final ZipArchiveEntry o1, final ZipArchiveEntry o2) {
+                final long size1 = o1.getSize();
+                final long size2 = o2.getSize();
+                return (size1 < size2 ? 1 : (size1 == size2 ? 0 : -1));
+            }
+        });
+        final Queue<ZipArchiveEntry> queue = new ConcurrentLinkedQueue<ZipArchiveEntry>(files);
+        final int threads = Math.max(1, Math.min(MAX_EXTRACT_THREADS, Math.min(Runtime.getRuntime().availableProcessors(), files.size())));
+        if (threads == 1) {
+            new EntryExtractor(file, queue, targetDir).call();
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "AS7-Extract-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new EntryExtractor(file, queue, targetDir)));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // Stop the other extractors
+                    queue.clear();
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException(cause);
+                } catch (InterruptedException e) {
+                    queue.clear();
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
     /**
      * Checks to see if a directory is empty.
      *
@@ -190,21 +279,23 @@ public class Files {
      * @return {@code true} if the directory and all it's contents were deleted, otherwise {@code false}
      */
     public static boolean deleteRecursively(final File dir) {
-        if (dir.isDirectory()) {
-            final File[] files = dir.listFiles();
-            if (files != null) {
-                for (final File f : files) {
-                    if (f.isDirectory()) {
-                        if (!deleteRecursively(f)) {
-                            return false;
-                        }
-                    } else if (!f.delete()) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return dir.delete();
+        return deleteRecursively(dir, null);
+    }
+
+    /**
+     * Recursively deletes all files and directories within the directory as well as the directory itself. The tree is
+     * walked in parallel and symbolic links to directories are deleted without deleting the contents of the linked
+     * directory.
+     * <p/>
+     * A failure to delete a file does not stop the remaining files from being deleted.
+     *
+     * @param dir      the directory to delete
+     * @param progress the listener notified as each file is deleted or {@code null}
+     *
+     * @return {@code true} if the directory and all it's contents were deleted, otherwise {@code false}
+     */
+    public static boolean deleteRecursively(final File dir, final Progress progress) {
+        return ParallelFileTree.delete(dir, progress);
     }
 
     /**
@@ -243,22 +334,143 @@ public class Files {
      * @throws IOException if an IO error occurs copying a file or creating directories
      */
     public static boolean copyDirectory(final File srcDir, final File targetDir) throws IOException {
-        final File[] contents = srcDir.listFiles();
-        for (File file : contents != null ? contents : new File[0]) {
-            final File target = new File(targetDir, file.getName());
-            if (file.isDirectory()) {
-                target.mkdirs();
-                if (!copyDirectory(file, target)) {
-                    return false;
+        return copyDirectory(srcDir, targetDir, null);
+    }
+
+    /**
+     * Recursively copies a directories contents to the target directory. The tree is walked in parallel.
+     * <p/>
+     * A failure to copy a file does not stop the remaining files from being copied.
+     *
+     * @param srcDir    the source directory
+     * @param targetDir the target directory
+     * @param progress  the listener notified as each file is copied or {@code null}
+     *
+     * @return {@code true} if the contents were successfully copied, {@code false} if the contents were not copied or
+     *         partially copied but a failure occurred
+     *
+     * @throws IOException the first IO error that occurred copying a file or creating directories
+     */
+    public static boolean copyDirectory(final File srcDir, final File targetDir, final Progress progress) throws IOException {
+        return ParallelFileTree.copy(srcDir, targetDir, progress);
+    }
+
+    /**
+     * Recreates the contents of the source directory in the target directory by hard linking the files rather than
+     * copying them. The target directory must not exist.
+     * <p/>
+     * If the file system does not support hard links, copy-on-write cloning is attempted on macOS and finally the
+     * contents are copied. Linked files share their content with the source, so the source files should be {@link
+     * #makeFilesReadOnly(File) read-only} if neither copy may change the other.
+     *
+     * @param srcDir    the source directory
+     * @param targetDir the target directory
+     *
+     * @return {@code true} if the contents were successfully linked or copied, otherwise {@code false}
+     *
+     * @throws IOException if an IO error occurs copying a file or creating directories
+     */
+    public static boolean linkDirectory(final File srcDir, final File targetDir) throws IOException {
+        return cloneDirectory(srcDir, targetDir, "-l") || (IS_MAC && cloneDirectory(srcDir, targetDir, "-c")) || copyDirectory(srcDir, targetDir);
+    }
+
+    /**
+     * Copies the contents of the source directory to the target directory using copy-on-write cloning if the file
+     * system supports it. The target directory must not exist.
+     *
+     * @param srcDir    the source directory
+     * @param targetDir the target directory
+     *
+     * @return {@code true} if the contents were successfully cloned or copied, otherwise {@code false}
+     *
+     * @throws IOException if an IO error occurs copying a file or creating directories
+     */
+    public static boolean cloneDirectory(final File srcDir, final File targetDir) throws IOException {
+        // GNU cp clones with --reflink, BSD cp on macOS with -c which GNU cp treats as --preserve=context
+        final String option = (IS_MAC ? "-c" : "--reflink=auto");
+        return cloneDirectory(srcDir, targetDir, option) || copyDirectory(srcDir, targetDir);
+    }
+
+    /**
+     * Removes the write permission of all the files in the directory and its sub-directories. The directories
+     * themselves stay writable so the tree can still be deleted. Does nothing on Windows where read-only files cannot
+     * be deleted and files are never {@link #linkDirectory(File, File) linked}.
+     *
+     * @param dir the directory
+     *
+     * @return {@code true} if all the files were made read-only, otherwise {@code false}
+     */
+    public static boolean makeFilesReadOnly(final File dir) {
+        if (IS_WINDOWS) {
+            return true;
+        }
+        boolean result = true;
+        final File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    result = makeFilesReadOnly(child) && result;
+                } else {
+                    result = child.setWritable(false, false) && result;
                 }
-            } else {
-                target.getParentFile().mkdirs();
-                if (!copyFile(file, target)) {
-                    return false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Uses the native {@code cp} command to recursively copy the directory as {@link java.io.File} has no support for
+     * links or cloning. On a failure any partially copied target is deleted.
+     */
+    private static boolean cloneDirectory(final File srcDir, final File targetDir, final String option) {
+        if (IS_WINDOWS) {
+            return false;
+        }
+        if (execute("cp", "-R", "-p", option, srcDir.getAbsolutePath(), targetDir.getAbsolutePath())) {
+            return true;
+        }
+        if (targetDir.exists()) {
+            deleteRecursively(targetDir);
+        }
+        return false;
+    }
+
+    /**
+     * Uses the native {@code ln} command to create a symbolic link as {@link java.io.File} has no support for links.
+     *
+     * @param link   the link to create
+     * @param target the file the link points to
+     *
+     * @return {@code true} if the link was created, otherwise {@code false}
+     */
+    static boolean createSymlink(final File link, final File target) {
+        return !IS_WINDOWS && execute("ln", "-s", target.getAbsolutePath(), link.getAbsolutePath());
+    }
+
+    private static boolean execute(final String... command) {
+        final ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectErrorStream(true);
+        try {
+            final Process process = processBuilder.start();
+            // Discard the output so the process cannot block on a full pipe
+            final InputStream in = process.getInputStream();
+            try {
+                final byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // no-op
                 }
+            } finally {
+                Streams.safeClose(in);
+            }
+            if (process.waitFor() == 0) {
+                return true;
             }
+        } catch (IOException ignore) {
+            // no-op
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        return true;
+        return false;
     }
 
     /**
@@ -320,4 +532,64 @@ public class Files {
             }
         });
     }
+
+    /**
+     * Receives progress of a recursive file operation.
+     */
+    public interface Progress {
+
+        /**
+         * Invoked after a file or directory has been processed. This may be invoked concurrently from multiple
+         * threads.
+         *
+         * @param file  the file processed
+         * @param count the number of files processed so far
+         */
+        void processed(File file, int count);
+    }
+
+    /**
+     * Extracts entries from the queue until the queue is empty.
+     */
+    private static class EntryExtractor implements Callable<Void> {
+        private final ZipFile file;
+        private final Queue<ZipArchiveEntry> queue;
+        private final File targetDir;
+        private final byte[] buffer;
+
+        EntryExtractor(final ZipFile file, final Queue<ZipArchiveEntry> queue, final File targetDir) {
+            this.file = file;
+            this.queue = queue;
+            this.targetDir = targetDir;
+            buffer = new byte[EXTRACT_BUFFER_SIZE];
+        }
+
+        @Override
+        public Void call() throws IOException {
+            ZipArchiveEntry entry;
+            while ((entry = queue.poll()) != null) {
+                final File extractTarget = new File(targetDir, entry.getName());
+                final InputStream in = file.getInputStream(entry);
+                try {
+                    final FileOutputStream out = new FileOutputStream(extractTarget);
+                    try {
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                        }
+                    } finally {
+                        Streams.safeClose(out);
+                    }
+                } finally {
+                    Streams.safeClose(in);
+                }
+                // Only set the permissions if they differ from the permissions of a newly created file
+                final int mode = entry.getUnixMode() & 0777;
+                if (mode > 0 && ((mode & 0111) != 0 || (mode & 0200) == 0)) {
+                    setPermissions(extractTarget, FilePermissions.of(mode));
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,315 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Walks directory trees in parallel. Each directory is processed by a task on a shared pool, the files within a
+ * directory are processed by the task for the directory.
+ * <p/>
+ * Symbolic links to directories are never followed when deleting, only the link is removed. When copying, links to
+ * directories within the tree are recreated as links to the same directory in the target tree. Links to directories
+ * outside of the tree, or links which could not be recreated, are followed once which prevents cycles.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class ParallelFileTree {
+
+    private static final int THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "AS7-File-Tree-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicReference<IOException> error = new AtomicReference<IOException>();
+    private final Files.Progress progress;
+    private volatile boolean failed;
+
+    private ParallelFileTree(final Files.Progress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Deletes the directory and all it's contents. Failures do not stop the remaining contents from being deleted.
+     *
+     * @param dir      the directory to delete
+     * @param progress the progress listener or {@code null}
+     *
+     * @return {@code true} if the directory and all it's contents were deleted, otherwise {@code false}
+     */
+    static boolean delete(final File dir, final Files.Progress progress) {
+        if (!dir.isDirectory() || isSymlink(dir)) {
+            return dir.delete();
+        }
+        final ParallelFileTree tree = new ParallelFileTree(progress);
+        final Queue<Directory> directories = new ConcurrentLinkedQueue<Directory>();
+        tree.submit(new DeleteTask(tree, directories, dir, 0));
+        tree.await();
+        // Directories can only be deleted once empty, delete the deepest first
+        final List<Directory> sorted = new ArrayList<Directory>(directories);
+        Collections.sort(sorted, new Comparator<Directory>() {
+            @Override
+            public int compare(final Directory o1, final Directory o2) {
+                return (o1.depth < o2.depth ? 1 : (o1.depth == o2.depth ? 0 : -1));
+            }
+        });
+        for (Directory d : sorted) {
+            if (d.dir.delete()) {
+                tree.processed(d.dir);
+            } else {
+                tree.failed = true;
+            }
+        }
+        return !tree.failed;
+    }
+
+    /**
+     * Copies the contents of the source directory to the target directory. Failures do not stop the remaining
+     * contents from being copied.
+     *
+     * @param srcDir    the source directory
+     * @param targetDir the target directory
+     * @param progress  the progress listener or {@code null}
+     *
+     * @return {@code true} if all the contents were copied, otherwise {@code false}
+     *
+     * @throws IOException the first IO error that occurred copying the contents
+     */
+    static boolean copy(final File srcDir, final File targetDir, final Files.Progress progress) throws IOException {
+        final ParallelFileTree tree = new ParallelFileTree(progress);
+        final Set<File> visited = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+        tree.submit(new CopyTask(tree, visited, srcDir.getCanonicalPath(), targetDir, srcDir, targetDir));
+        tree.await();
+        final IOException e = tree.error.get();
+        if (e != null) {
+            throw e;
+        }
+        return !tree.failed;
+    }
+
+    /**
+     * Checks whether the file is a symbolic link. Only the file itself is checked, links in the parent path are
+     * ignored.
+     *
+     * @param file the file to check
+     *
+     * @return {@code true} if the file is a symbolic link, otherwise {@code false}
+     */
+    static boolean isSymlink(final File file) {
+        try {
+            final File parent = file.getAbsoluteFile().getParentFile();
+            if (parent == null) {
+                return false;
+            }
+            final File canonical = new File(parent.getCanonicalFile(), file.getName());
+            return !canonical.getCanonicalFile().equals(canonical.getAbsoluteFile());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void submit(final Runnable task) {
+        pending.incrementAndGet();
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        done.countDown();
+                    }
+                }
+            }
+        });
+    }
+
+    private void await() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processed(final File file) {
+        final int count = processed.incrementAndGet();
+        if (progress != null) {
+            progress.processed(file, count);
+        }
+    }
+
+    private void failed(final IOException e) {
+        failed = true;
+        if (e != null) {
+            error.compareAndSet(null, e);
+        }
+    }
+
+    private static class Directory {
+        final File dir;
+        final int depth;
+
+        Directory(final File dir, final int depth) {
+            this.dir = dir;
+            this.depth = depth;
+        }
+    }
+
+    private static class DeleteTask implements Runnable {
+        private final ParallelFileTree tree;
+        private final Queue<Directory> directories;
+        private final File dir;
+        private final int depth;
+
+        DeleteTask(final ParallelFileTree tree, final Queue<Directory> directories, final File dir, final int depth) {
+            this.tree = tree;
+            this.directories = directories;
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        @Override
+        public void run() {
+            directories.add(new Directory(dir, depth));
+            final File[] files = dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (file.isDirectory() && !isSymlink(file)) {
+                    tree.submit(new DeleteTask(tree, directories, file, depth + 1));
+                } else if (file.delete()) {
+                    tree.processed(file);
+                } else {
+                    tree.failed(null);
+                }
+            }
+        }
+    }
+
+    private static class CopyTask implements Runnable {
+        private final ParallelFileTree tree;
+        private final Set<File> visited;
+        private final String root;
+        private final File targetRoot;
+        private final File srcDir;
+        private final File targetDir;
+
+        CopyTask(final ParallelFileTree tree, final Set<File> visited, final String root, final File targetRoot, final File srcDir, final File targetDir) {
+            this.tree = tree;
+            this.visited = visited;
+            this.root = root;
+            this.targetRoot = targetRoot;
+            this.srcDir = srcDir;
+            this.targetDir = targetDir;
+        }
+
+        @Override
+        public void run() {
+            if (!targetDir.isDirectory() && !targetDir.mkdirs()) {
+                tree.failed(new IOException(Messages.INSTANCE.getMessage("files.create.directory.error", targetDir)));
+                return;
+            }
+            final File[] files = srcDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                final File target = new File(targetDir, file.getName());
+                try {
+                    if (file.isDirectory()) {
+                        if (!isSymlink(file)) {
+                            tree.submit(new CopyTask(tree, visited, root, targetRoot, file, target));
+                        } else {
+                            // Links within the tree are recreated to point to the same directory in the target tree
+                            final File canonical = file.getCanonicalFile();
+                            if (isWithin(canonical) && Files.createSymlink(target, new File(targetRoot, canonical.getPath().substring(root.length())))) {
+                                tree.processed(file);
+                            } else if (visited.add(canonical)) {
+                                // Any other link is copied as a directory only once, otherwise a link back to a parent
+                                // would never end
+                                tree.submit(new CopyTask(tree, visited, root, targetRoot, file, target));
+                            }
+                        }
+                    } else if (Files.copyFile(file, target)) {
+                        // Only whether the current user can execute the file is known, so only the owner permission
+                        // is copied rather than granting everyone the permission
+                        if (file.canExecute()) {
+                            target.setExecutable(true);
+                        }
+                        tree.processed(file);
+                    } else {
+                        tree.failed(null);
+                    }
+                } catch (IOException e) {
+                    tree.failed(e);
+                }
+            }
+        }
+
+        private boolean isWithin(final File canonical) {
+            final String path = canonical.getPath();
+            return path.equals(root) || path.startsWith(root.endsWith(File.separator) ? root : root + File.separator);
+        }
+    }
+}
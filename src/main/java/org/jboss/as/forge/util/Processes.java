@@ -0,0 +1,283 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.forge.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Utilities for operating system processes.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class Processes {
+
+    private static final String VM_RSS = "VmRSS:";
+
+    /**
+     * Executes the command and waits for it to exit.
+     *
+     * @param command the command to execute
+     * @param output  the builder the standard and error output of the command is appended to
+     *
+     * @return the exit code of the command
+     *
+     * @throws IOException          if the command could not be executed
+     * @throws InterruptedException if the thread was interrupted waiting for the command
+     */
+    public static int execute(final List<String> command, final StringBuilder output) throws IOException, InterruptedException {
+        final ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectErrorStream(true);
+        final Process process = processBuilder.start();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+        } finally {
+            Streams.safeClose(reader);
+        }
+        return process.waitFor();
+    }
+
+    /**
+     * Returns the operating system process id of the process.
+     * <p/>
+     * On Java 9 and later the id is returned by the process, on earlier versions the id is read from the {@code pid}
+     * field of the Unix process implementation.
+     *
+     * @param process the process
+     *
+     * @return the process id or {@code -1} if the id could not be determined
+     */
+    public static long getProcessId(final Process process) {
+        try {
+            final Method method = Process.class.getMethod("pid");
+            return ((Number) method.invoke(process)).longValue();
+        } catch (NoSuchMethodException ignore) {
+            // Java 8 and earlier
+        } catch (Exception ignore) {
+            return -1L;
+        }
+        try {
+            final Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getLong(process);
+        } catch (Exception ignore) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Returns the resident set size, the physical memory used, of the process. The size is read from {@code /proc} on
+     * Linux and from {@code ps} on other Unix systems.
+     *
+     * @param pid the id of the process
+     *
+     * @return the resident set size in bytes or {@code -1} if the size could not be determined
+     */
+    public static long getResidentSetSize(final long pid) {
+        if (pid <= 0L) {
+            return -1L;
+        }
+        final File status = new File("/proc/" + pid + "/status");
+        try {
+            if (status.isFile()) {
+                final BufferedReader reader = new BufferedReader(new FileReader(status));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith(VM_RSS)) {
+                            return parseKilobytes(line.substring(VM_RSS.length()).replace("kB", ""));
+                        }
+                    }
+                } finally {
+                    Streams.safeClose(reader);
+                }
+                return -1L;
+            }
+            if (isUnix()) {
+                final StringBuilder output = new StringBuilder();
+                if (execute(Arrays.asList("ps", "-o", "rss=", "-p", Long.toString(pid)), output) == 0) {
+                    return parseKilobytes(output.toString());
+                }
+            }
+        } catch (IOException ignore) {
+            // Not available
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return -1L;
+    }
+
+    /**
+     * Returns the ids of all the processes started by the process and by its children. The processes are listed with
+     * {@code ps} on Unix systems. On Windows an empty list is returned, use {@link #kill(long)} which kills the whole
+     * process tree.
+     *
+     * @param pid the id of the process
+     *
+     * @return the ids of the descendants, children before grandchildren
+     */
+    public static List<Long> getDescendants(final long pid) {
+        final List<Long> result = new ArrayList<Long>();
+        if (pid <= 0L || !isUnix()) {
+            return result;
+        }
+        final Map<Long, List<Long>> children = new HashMap<Long, List<Long>>();
+        try {
+            final StringBuilder output = new StringBuilder();
+            if (execute(Arrays.asList("ps", "-A", "-o", "pid=,ppid="), output) != 0) {
+                return result;
+            }
+            for (String line : output.toString().split("\n")) {
+                final String[] ids = line.trim().split("\\s+");
+                if (ids.length == 2) {
+                    try {
+                        final Long parent = Long.valueOf(ids[1]);
+                        List<Long> list = children.get(parent);
+                        if (list == null) {
+                            list = new ArrayList<Long>();
+                            children.put(parent, list);
+                        }
+                        list.add(Long.valueOf(ids[0]));
+                    } catch (NumberFormatException ignore) {
+                        // Not a process line
+                    }
+                }
+            }
+        } catch (IOException ignore) {
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result;
+        }
+        final LinkedList<Long> queue = new LinkedList<Long>(Collections.singleton(pid));
+        while (!queue.isEmpty()) {
+            final List<Long> list = children.get(queue.removeFirst());
+            if (list != null) {
+                for (Long child : list) {
+                    // Guard against a cycle caused by an id reused while the processes were listed
+                    if (child != pid && !result.contains(child)) {
+                        result.add(child);
+                        queue.add(child);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the process is running. Only supported on Unix systems.
+     *
+     * @param pid the id of the process
+     *
+     * @return {@code true} if the process is running, otherwise {@code false}
+     */
+    public static boolean isAlive(final long pid) {
+        if (pid <= 0L || !isUnix()) {
+            return false;
+        }
+        final File proc = new File("/proc/self");
+        if (proc.isDirectory()) {
+            return new File("/proc", Long.toString(pid)).isDirectory();
+        }
+        return signal(pid, "0");
+    }
+
+    /**
+     * Asks the process to terminate by sending it {@code SIGTERM}. Only supported on Unix systems.
+     *
+     * @param pid the id of the process
+     *
+     * @return {@code true} if the signal was sent, otherwise {@code false}
+     */
+    public static boolean terminate(final long pid) {
+        return isUnix() && signal(pid, "TERM");
+    }
+
+    /**
+     * Kills the process. On Unix systems {@code SIGKILL} is sent to the process, on Windows the process and all the
+     * processes it started are killed with {@code taskkill}.
+     *
+     * @param pid the id of the process
+     *
+     * @return {@code true} if the process was killed, otherwise {@code false}
+     */
+    public static boolean kill(final long pid) {
+        if (pid <= 0L) {
+            return false;
+        }
+        if (isUnix()) {
+            return signal(pid, "KILL");
+        }
+        try {
+            return execute(Arrays.asList("taskkill", "/F", "/T", "/PID", Long.toString(pid)), new StringBuilder()) == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean signal(final long pid, final String signal) {
+        if (pid <= 0L) {
+            return false;
+        }
+        try {
+            return execute(Arrays.asList("kill", "-" + signal, Long.toString(pid)), new StringBuilder()) == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean isUnix() {
+        return File.separatorChar == '/';
+    }
+
+    private static long parseKilobytes(final String value) {
+        try {
+            return Long.parseLong(value.trim()) * 1024L;
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}